@@ -0,0 +1,57 @@
+package main.java.benchmarks;
+
+import main.java.model.Board;
+import main.java.model.Evaluator;
+import main.java.model.Heuristic;
+import main.java.model.IncrementalEvaluator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Scoring each reference position with each heuristic, either by scanning the board or incrementally, from the
+ * piece-square score the board keeps as moves are made
+ *
+ * @author tp275
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OperationsPerInvocation(ReferencePositions.COUNT)
+public class EvaluationBenchmark {
+
+    @Param({"PIECES", "WEIGHTED", "PIECE_AND_ROW", "PIECE_AND_ROW_AND_WEIGHTED", "COMPLEX"})
+    private Heuristic heuristic;
+
+    @Param({"false", "true"})
+    private boolean incremental;
+
+    private Evaluator evaluator;
+    private final Board[] boards = new Board[ReferencePositions.COUNT];
+
+    @Setup
+    public void setUp(ReferencePositions positions) {
+        evaluator = incremental ? IncrementalEvaluator.of(heuristic) : heuristic;
+        for (int i = 0; i < ReferencePositions.COUNT; i++) {
+            boards[i] = new Board(positions.boards[i]);
+            if (incremental) {
+                boards[i].setPieceSquareTable(evaluator.getPieceSquareTable());
+            }
+        }
+    }
+
+    @Benchmark
+    public void evaluate(ReferencePositions positions, Blackhole blackhole) {
+        for (int i = 0; i < ReferencePositions.COUNT; i++) {
+            blackhole.consume(evaluator.evaluate(boards[i], positions.colours[i]));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package main.java.benchmarks;
+
+import main.java.model.Board;
+import main.java.model.Heuristic;
+import main.java.model.IncrementalEvaluator;
+import main.java.model.Move;
+import main.java.model.MoveGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Making every move of each reference position: by copying the board (updateLocation, as the interface does), and by
+ * making and unmaking it in place (as the search does), with and without a piece-square table to keep up to date
+ *
+ * @author tp275
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OperationsPerInvocation(ReferencePositions.COUNT)
+public class MakeMoveBenchmark {
+
+    private final MoveGenerator moveGenerator = new MoveGenerator();
+    private final List<List<Move>> completeMoves = new ArrayList<>();
+    private final long[][] packedMoves = new long[ReferencePositions.COUNT][];
+    private final Board[] trackingBoards = new Board[ReferencePositions.COUNT]; // keeping an evaluator's score
+
+    @Setup
+    public void setUp(ReferencePositions positions) {
+        long[] moves = new long[MoveGenerator.MAX_MOVES];
+        IncrementalEvaluator evaluator = IncrementalEvaluator.of(Heuristic.PIECE_AND_ROW);
+        for (int i = 0; i < ReferencePositions.COUNT; i++) {
+            completeMoves.add(moveGenerator.findCompleteMoves(positions.boards[i], positions.colours[i]));
+            int count = moveGenerator.generateMoves(positions.boards[i], positions.colours[i], moves);
+            packedMoves[i] = Arrays.copyOf(moves, count);
+            trackingBoards[i] = new Board(positions.boards[i]);
+            trackingBoards[i].setPieceSquareTable(evaluator.getPieceSquareTable());
+        }
+    }
+
+    @Benchmark
+    public void updateLocation(ReferencePositions positions, Blackhole blackhole) {
+        for (int i = 0; i < ReferencePositions.COUNT; i++) {
+            for (Move move : completeMoves.get(i)) {
+                blackhole.consume(positions.boards[i].updateLocation(move));
+            }
+        }
+    }
+
+    @Benchmark
+    public void makeUnmakeMove(ReferencePositions positions, Blackhole blackhole) {
+        for (int i = 0; i < ReferencePositions.COUNT; i++) {
+            makeUnmake(positions.boards[i], packedMoves[i], blackhole);
+        }
+    }
+
+    @Benchmark
+    public void makeUnmakeMoveIncremental(Blackhole blackhole) {
+        for (int i = 0; i < ReferencePositions.COUNT; i++) {
+            makeUnmake(trackingBoards[i], packedMoves[i], blackhole);
+        }
+    }
+
+    private static void makeUnmake(Board board, long[] moves, Blackhole blackhole) {
+        for (long move : moves) {
+            board.makeMove(move);
+            blackhole.consume(board.getHash());
+            board.unmakeMove(move);
+        }
+    }
+}
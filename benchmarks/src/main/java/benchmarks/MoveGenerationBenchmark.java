@@ -0,0 +1,49 @@
+package main.java.benchmarks;
+
+import main.java.model.MoveGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Generating the moves of each reference position: as the single hops the interface shows (findValidMoves), as whole
+ * moves (findCompleteMoves, which replaced updateValidMovesWithJumps), and packed, as the search does (generateMoves)
+ *
+ * @author tp275
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OperationsPerInvocation(ReferencePositions.COUNT)
+public class MoveGenerationBenchmark {
+
+    private final MoveGenerator moveGenerator = new MoveGenerator();
+    private final long[] moves = new long[MoveGenerator.MAX_MOVES];
+
+    @Benchmark
+    public void findValidMoves(ReferencePositions positions, Blackhole blackhole) {
+        for (int i = 0; i < ReferencePositions.COUNT; i++) {
+            blackhole.consume(moveGenerator.findValidMoves(positions.boards[i], positions.colours[i]));
+        }
+    }
+
+    @Benchmark
+    public void findCompleteMoves(ReferencePositions positions, Blackhole blackhole) {
+        for (int i = 0; i < ReferencePositions.COUNT; i++) {
+            blackhole.consume(moveGenerator.findCompleteMoves(positions.boards[i], positions.colours[i]));
+        }
+    }
+
+    @Benchmark
+    public void generateMoves(ReferencePositions positions, Blackhole blackhole) {
+        for (int i = 0; i < ReferencePositions.COUNT; i++) {
+            blackhole.consume(moveGenerator.generateMoves(positions.boards[i], positions.colours[i], moves));
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package main.java.benchmarks;
+
+import main.java.model.Board;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The suite of reference positions every benchmark runs over, from the start to king endgames, each benchmark
+ * operation covering one position (see COUNT)
+ *
+ * @author tp275
+ */
+@State(Scope.Thread)
+public class ReferencePositions {
+
+    /** The number of positions, for @OperationsPerInvocation on benchmarks that run over all of them */
+    public static final int COUNT = 8;
+
+    /** The colour to move, then the squares as read by Board.parse */
+    private static final String[] POSITIONS = {
+            "r:wwwwwwwwwwww--------rrrrrrrrrrrr", // start
+            "r:wwww-w-w--wwww------r-r-rrrwrrrr", // opening
+            "r:wwwwww-w-ww----w-wrr-r--rrr-rrrr", // captures pending
+            "r:-www-wwww---------r-w--rrr--rrr-", // middlegame
+            "r:w-Rwww------w-----rrrr---r--rr--", // middlegame with a king
+            "w:-R-w-----r----w------rW-----rr--", // kings and men
+            "r:-----rRw-----r----------r-----W-", // king endgame
+            "r:-----------r-Rr-----------W--W--"  // king endgame
+    };
+
+    Board[] boards;
+    char[] colours;
+
+    @Setup
+    public void setUp() {
+        boards = new Board[COUNT];
+        colours = new char[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            colours[i] = POSITIONS[i].charAt(0);
+            boards[i] = Board.parse(POSITIONS[i].substring(2));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package main.java.benchmarks;
+
+import main.java.model.AI;
+import main.java.model.Board;
+import main.java.model.MoveGenerator;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Fixed-depth searches of each reference position, on one thread. Each search starts with an empty transposition
+ * table, as playFixedDepth clears it, so every run searches the same tree. The nodes searched (including quiescence
+ * nodes) are reported as a secondary result, "nodes", in nodes per second.
+ *
+ * @author tp275
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@OperationsPerInvocation(ReferencePositions.COUNT)
+public class SearchBenchmark {
+
+    @Param({"6"})
+    private int depth;
+
+    private final MoveGenerator moveGenerator = new MoveGenerator();
+    private AI ai;
+
+    /**
+     * The nodes searched, which JMH reports as a rate alongside the searches per second
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Nodes {
+        public long nodes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            nodes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        ai = new AI(16);
+        ai.setForcedMoveDelay(0);
+    }
+
+    @Benchmark
+    public void searchFixedDepth(ReferencePositions positions, Nodes nodes, Blackhole blackhole) {
+        for (int i = 0; i < ReferencePositions.COUNT; i++) {
+            Board board = positions.boards[i];
+            char colour = positions.colours[i];
+            blackhole.consume(ai.playFixedDepth(new Board(board), moveGenerator.findValidMoves(board, colour), depth,
+                                                colour));
+            nodes.nodes += ai.getNodeCount() + ai.getQuiescenceNodeCount();
+        }
+    }
+}
@@ -23,12 +23,21 @@ import javafx.scene.text.Text;
 import javafx.util.Duration;
 import main.java.model.AI;
 import main.java.model.Board;
+import main.java.model.EvaluationWeights;
+import main.java.model.IncrementalEvaluator;
 import main.java.model.Move;
 import main.java.model.MoveGenerator;
+import main.java.model.OpeningBook;
+import main.java.model.SearchMonitor;
+import main.java.model.Tablebase;
 
+import javax.management.JMException;
 import java.awt.*;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.*;
 
@@ -94,9 +103,70 @@ public class Controller implements Initializable {
                 c19, c20, c21, c22, c23, c24));
         aiTurn = false;
         internalBoard = new Board();
+        loadWeights();
+        loadTablebase();
+        loadOpeningBook();
+        registerSearchMonitor();
+    }
+
+    /**
+     * Publishes the AI's search statistics over JMX, so its performance can be watched with JConsole
+     */
+    private void registerSearchMonitor() {
+        SearchMonitor monitor = new SearchMonitor();
+        ai.addSearchListener(monitor);
+        try {
+            monitor.register("AI");
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Has the AI evaluate with the tuned weights in the working directory, if there are any (see Tuner)
+     */
+    private void loadWeights() {
+        Path file = Paths.get(EvaluationWeights.DEFAULT_FILE);
+        if (Files.exists(file)) {
+            try {
+                ai.setEvaluator(IncrementalEvaluator.load(file));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Gives the AI the endgame tablebase in the 'tablebases' directory, if there is one (see TablebaseGenerator)
+     */
+    private void loadTablebase() {
+        Path directory = Paths.get("tablebases");
+        if (Files.isDirectory(directory)) {
+            try {
+                ai.setTablebase(Tablebase.open(directory));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Gives the AI the opening book in the working directory, if there is one (see OpeningBookBuilder). The AI varies
+     * its book moves, so that games don't all start the same way.
+     */
+    private void loadOpeningBook() {
+        Path file = Paths.get(OpeningBook.DEFAULT_FILE);
+        if (Files.exists(file)) {
+            try {
+                ai.setOpeningBook(OpeningBook.open(file), true);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
     private void playAIVsAI() {
+        ai.stopPondering();
         aiTurn = true;
         currentAIColor = 'r';
         while (!win && aiVsAI) {
@@ -273,7 +343,7 @@ public class Controller implements Initializable {
      */
     private void checkForHumanMultiJump(Move playerMove) {
         // if player's move was a jump move, and there is an available jump move with it's origin at the original move's destination
-        if (playerMove.hasPieceToRemove() && (moveGenerator.detectMultiMove(internalBoard, 'r', playerMove.getDestination()).size() > 0)) {
+        if (playerMove.hasPieceToRemove() && (moveGenerator.detectMultiMove(internalBoard, 'r', playerMove).size() > 0)) {
             aiTurn = false;
             turnText.setText(" Human multi-jump!");
         } else {
@@ -289,9 +359,9 @@ public class Controller implements Initializable {
 
         Move aiMove = runMinimax(); // Minimax!
         internalBoard = internalBoard.updateLocation(aiMove); // update model board
-        System.out.println(internalBoard.toString()); // TODO: Remove printing
         // TODO: Swapped these around:
         updateAIPiece(aiMove, 'w'); // update GUI board
+        ai.ponder(internalBoard, 'r'); // think about the AI's next move while the human thinks about theirs
         // check (& execute) whether the AI has won
         Platform.runLater(() -> checkForWin('w'));
         Platform.runLater(() -> spinner.setVisible(false));
@@ -305,7 +375,6 @@ public class Controller implements Initializable {
 
         Move aiMove = runMinimax(color); // Minimax!
         internalBoard = internalBoard.updateLocation(aiMove); // update model board
-        System.out.println(internalBoard.toString()); // TODO: Remove printing
         // TODO: Swapped these around:
         updateAIPiece(aiMove, color); // update GUI board
         // check (& execute) whether the AI has won
@@ -320,12 +389,12 @@ public class Controller implements Initializable {
      */
     private Move runMinimax() {
         int timeLimitSeconds = (int)sliderDifficulty.getValue();
-        return ai.playTimeLimited(new Board(internalBoard.getBoard()), timeLimitSeconds, findValidMoves('w'), 'w');
+        return ai.playTimeLimited(new Board(internalBoard), timeLimitSeconds, findValidMoves('w'), 'w');
     }
 
     private Move runMinimax(char color) {
         int timeLimitSeconds = (int)sliderDifficulty.getValue();
-        return ai.playTimeLimited(new Board(internalBoard.getBoard()), timeLimitSeconds, findValidMoves(color), color);
+        return ai.playTimeLimited(new Board(internalBoard), timeLimitSeconds, findValidMoves(color), color);
     }
 
     /**
@@ -761,6 +830,7 @@ public class Controller implements Initializable {
      */
     private void createFinishedPopup(String title, String body) {
         aiTurn = true; // stop user being able to move pieces
+        ai.stopPondering();
         JFXDialogLayout dialogLayout = new JFXDialogLayout(); // create the dialog...
         dialogLayout.setHeading(new Text(title));
         dialogLayout.setBody(new Text(body));
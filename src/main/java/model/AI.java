@@ -1,19 +1,68 @@
 package main.java.model;
 
 import java.awt.*;
-import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
 
 /**
  * Uses the minimax algorithm with alpha-beta pruning and a heuristic to determine the best available move for the AI.
  *
+ * With more than one thread the search is run 'Lazy SMP' style: helper threads search the same root position alongside
+ * the main search, sharing its transposition table, so the main search finds more of its positions already searched.
+ * The move returned is always the main search's.
+ *
+ * The transposition table and history scores are kept from one search to the next, so that each move of a game starts
+ * from what the searches of the moves before found, including the principal variation (the table's best moves).
+ *
  * @author tp275
  */
-public class AI {
+public class AI implements AutoCloseable {
 
     private final MoveGenerator moveGenerator = new MoveGenerator();
+    private final TranspositionTable transpositionTable;
+    private final Searcher searcher;
+    private final int threads;
+    private final ExecutorService helperPool;
+    private Tablebase tablebase; // null if there isn't one
+    private OpeningBook openingBook; // null if there isn't one
+    private Random bookRandom; // null to always play the book's best move
+    private Evaluator evaluator = IncrementalEvaluator.of(Heuristic.PIECE_AND_ROW);
+    private boolean quiescence = true;
+    private boolean moveOrdering = true;
+    private long forcedMoveDelayMillis = 200; // pause before playing a forced move, so it can be seen coming
+    private ExecutorService ponderPool; // created when first pondering
+    private Future<Move> ponderResult; // null if not pondering
+    private Board ponderBoard; // the position being pondered
+    private char ponderColor; // the colour to move in it
+    private final Object searchLock = new Object(); // guards searchNumber and stoppedThrough
+    private long searchNumber; // the number of searches started by the play methods
+    private long stoppedThrough; // the highest numbered search asked to stop (see stop(long))
+    private final List<SearchListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile SearchStatistics lastStatistics;
+    // the search in progress's statistics, only used by the searching thread
+    private SearchStatistics.Source statisticsSource;
+    private long statisticsStart; // System.nanoTime() at the start of the search
+    private long iterationStart;
+    private long probesAtStart;
+    private long hitsAtStart;
+    private long[] iterationNanos = new long[16];
+    private int iterations;
+    private int aspirationFailLows;
+    private int aspirationFailHighs;
+    private int aspirationWindow = ASPIRATION_WINDOW;
+    static final int ASPIRATION_WINDOW = 2; // how far either side of the last score each iteration's window starts
+    private static final int ASPIRATION_GROWTH = 4; // the widening of a failed side of the window
+    private static final int MAX_ASPIRATION_GROWTH = 64; // past which the side is opened entirely
+    private static final int MAX_UNLIMITED_DEPTH = MoveOrderer.MAX_PLY / 2; // where searches with no limit stop
     private static final int[][] positionWeightLookup = {{0, 4, 0, 4, 0, 4, 0, 4},
                                                          {4, 0, 3, 0, 3, 0, 3, 0},
                                                          {0, 3, 0, 2, 0, 2, 0, 4},
@@ -22,9 +71,47 @@ public class AI {
                                                          {4, 0, 2, 0, 2, 0, 3, 0},
                                                          {0, 3, 0, 3, 0, 3, 0, 4},
                                                          {4, 0, 4, 0, 4, 0, 4, 0}};
+    static final int[] squareWeights = new int[32]; // positionWeightLookup indexed by square number
     public static final int POSITIVE_INFINITY = 2000000000;
     public static final int NEGATIVE_INFINITY = -2000000000;
 
+    static {
+        for (int square = 0; square < 32; square++) {
+            squareWeights[square] = positionWeightLookup[Board.toRow(square)][Board.toColumn(square)];
+        }
+    }
+
+    /**
+     * Creates a single-threaded AI with a transposition table of the default size
+     */
+    public AI() {
+        this(TranspositionTable.DEFAULT_SIZE_MEGABYTES);
+    }
+
+    /**
+     * Creates a single-threaded AI with a transposition table of the given size
+     * @param transpositionTableMegabytes the amount of memory the transposition table may use
+     */
+    public AI(int transpositionTableMegabytes) {
+        this(transpositionTableMegabytes, 1);
+    }
+
+    /**
+     * Creates an AI with a transposition table of the given size, searching with the given number of threads
+     * @param transpositionTableMegabytes the amount of memory the transposition table may use
+     * @param threads the number of threads to search with (including the calling thread)
+     */
+    public AI(int transpositionTableMegabytes, int threads) {
+        this.transpositionTable = new TranspositionTable(transpositionTableMegabytes);
+        this.searcher = new Searcher(transpositionTable);
+        this.threads = Math.max(1, threads);
+        this.helperPool = this.threads > 1 ? Executors.newFixedThreadPool(this.threads - 1, runnable -> {
+            Thread thread = new Thread(runnable, "AI helper");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
     /*
     /**
      * Runs the minimax algorithm on all moves given in the list parameter, and returns the best one
@@ -36,359 +123,816 @@ public class AI {
     public Move play(Board board, int depth, ArrayList<Move> moves) {
         HashMap<Double, Move> scores = new HashMap<>();
         for (Move move : moves) {
-            scores.put(minimax(board.updateLocation(move), depth, NEGATIVE_INFINITY, POSITIVE_INFINITY, 'w', move), move);
+            scores.put(minimax(board.updateLocation(move), depth, NEGATIVE_INFINITY, POSITIVE_INFINITY, 'w', move),
+                       move);
         }
         return scores.get(Collections.max(scores.keySet()));
     }
     */
 
     public Move playTimeLimited(Board board, int timeLimitSeconds, ArrayList<Move> moves, char color) {
-        moves = moveGenerator.updateValidMovesWithJumps(board, moves, color);
-        LocalTime localTimeLimit = LocalTime.now().plusSeconds(timeLimitSeconds);
-        System.out.println("Colour = " + color);
-        HashMap<Integer, Move> scores = getScores(board, localTimeLimit, moves, color);
-//        Move bestMove = color == 'w' ? scores.get(Collections.max(scores.keySet())) : scores.get(Collections.min(scores.keySet()));
-        Move bestMove = scores.get(Collections.max(scores.keySet()));
-        System.out.println("Selected move: " + bestMove);
+        return playTimeLimitedMillis(board, timeLimitSeconds * 1000L, moves, color);
+    }
+
+    /**
+     * Searches for the best move until the time limit is reached, or stop() is called, returning the best move of the
+     * last completed depth
+     * @param board the current game state
+     * @param timeLimitMillis how long to search for, in milliseconds
+     * @param moves the valid moves for the given colour
+     * @param color the colour to move
+     * @return the best move found
+     */
+    public Move playTimeLimitedMillis(Board board, long timeLimitMillis, ArrayList<Move> moves, char color) {
+        beginSearch();
+        long deadline = System.nanoTime() + timeLimitMillis * 1000000L;
+        Move ponderedMove = finishPondering(board, color, deadline);
+        if (ponderedMove != null) {
+            return ponderedMove;
+        }
+        return play(board, moves, color, deadline, 0);
+    }
+
+    /**
+     * Searches for the best move until the given number of nodes have been searched, or stop() is called, returning
+     * the best move of the last completed depth. Unlike a time limit, the move found doesn't depend on the speed of the
+     * machine or how busy it is (if the AI is single-threaded), so games played this way can be repeated exactly.
+     * @param board the current game state
+     * @param nodeLimit the number of nodes (including quiescence nodes) to search
+     * @param moves the valid moves for the given colour
+     * @param color the colour to move
+     * @return the best move found
+     */
+    public Move playNodeLimited(Board board, long nodeLimit, ArrayList<Move> moves, char color) {
+        beginSearch();
+        return play(board, moves, color, 0, nodeLimit);
+    }
+
+    /**
+     * Searches for the best move until stop() is called (or MAX_UNLIMITED_DEPTH is reached), eg. to analyse a
+     * position for as long as the user wants
+     * @param board the current game state
+     * @param moves the valid moves for the given colour
+     * @param color the colour to move
+     * @return the best move found
+     */
+    public Move playUntilStopped(Board board, ArrayList<Move> moves, char color) {
+        beginSearch();
+        return play(board, moves, color, 0, 0);
+    }
+
+    /**
+     * Plays a book move if there is one, otherwise iteratively deepens (with any helper threads) until the deadline
+     * or node limit is reached
+     * @param deadline the System.nanoTime() value to stop at, or 0 for no deadline
+     * @param nodeLimit the number of nodes to stop after, or 0 for no limit (with neither, the search stops at
+     *                  MAX_UNLIMITED_DEPTH)
+     */
+    private Move play(Board board, ArrayList<Move> moves, char color, long deadline, long nodeLimit) {
+        stopPondering();
+        long[] rootMoves = rootMoves(board, moves, color);
+        Move bookMove = getBookMove(board, rootMoves, color);
+        if (bookMove != null) {
+            startStatistics(SearchStatistics.Source.BOOK);
+            publish(statistics(PackedMove.fromMove(bookMove), 0));
+            return bookMove;
+        }
+        newSearch();
+        if (deadline != 0) {
+            searcher.setDeadline(deadline);
+        }
+        searcher.setNodeLimit(nodeLimit);
+        int maxDepth = deadline == 0 && nodeLimit == 0 ? MAX_UNLIMITED_DEPTH : POSITIVE_INFINITY;
+        Move bestMove = search(board, rootMoves, color, maxDepth);
+        publish(lastStatistics);
         return bestMove;
     }
 
-    private HashMap<Integer, Move> getScores(Board board, LocalTime localTimeLimit, ArrayList<Move> moves, char color) {
-        for (Move move : moves) {
-            System.out.print("{" + move + "} ");
+    /**
+     * Iteratively deepens (with any helper threads) until the given depth, or until the searcher stops itself or is
+     * stopped, having already been set up by newSearch
+     * @param board the root position
+     * @param rootMoves the packed root moves
+     * @param color the colour to move
+     * @param maxDepth the deepest to search
+     * @return the best move found
+     */
+    private Move search(Board board, long[] rootMoves, char color, int maxDepth) {
+        List<Searcher> helpers = new ArrayList<>();
+        List<Future<?>> helperResults = startHelpers(board, rootMoves, color, helpers);
+        HashMap<Integer, Long> scores = getScores(board, maxDepth, rootMoves, color);
+        stopHelpers(helpers, helperResults);
+//        Move bestMove = color == 'w' ? scores.get(Collections.max(scores.keySet()))
+//                                     : scores.get(Collections.min(scores.keySet()));
+        Move bestMove = bestMove(board, scores);
+        lastStatistics = statistics(scores);
+        return bestMove;
+    }
+
+    /**
+     * Starts searching in the background while the opponent thinks about their move, from the position after the
+     * reply the last search expects them to make (its best move in the transposition table), or if it doesn't expect
+     * one, from the opponent's position itself. Either way the search fills the transposition table for the next
+     * search. If the opponent does make the expected reply, the next time limited
+     * search just gives the ponder search its deadline and waits for it, so carries on from where pondering got to.
+     * @param board the position the opponent is to move in
+     * @param opponentColor the opponent's colour
+     */
+    public void ponder(Board board, char opponentColor) {
+        stopPondering();
+        Board ponderBoard = new Board(board);
+        char ponderColor = opponentColor;
+        long expectedReply = expectedReply(ponderBoard, opponentColor);
+        if (expectedReply != 0) {
+            ponderBoard.makeMove(expectedReply);
+            ponderColor = opponent(opponentColor);
+        }
+        long[] rootMoves = rootMoves(ponderBoard, moveGenerator.findValidMoves(ponderBoard, ponderColor), ponderColor);
+        if (rootMoves.length == 0 || getBookMove(ponderBoard, rootMoves, ponderColor) != null) {
+            return; // nothing worth searching
         }
-        System.out.println();
+        transpositionTable.newSearch();
+        searcher.newSearch(); // set up here rather than on the ponder thread, so finishPondering can't be overtaken
+        searcher.resetNodes();
+        startStatistics(SearchStatistics.Source.PONDER);
+        if (ponderPool == null) {
+            ponderPool = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "AI ponder");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        char color = ponderColor;
+        ponderResult = ponderPool.submit(() -> search(ponderBoard, rootMoves, color, MAX_UNLIMITED_DEPTH));
+        this.ponderBoard = ponderBoard;
+        this.ponderColor = ponderColor;
+    }
 
-        HashMap<Integer, Move> scores = new HashMap<>();
+    /**
+     * Stops any ponder search and waits for it to finish. What it found stays in the transposition table.
+     */
+    public void stopPondering() {
+        if (ponderResult == null) {
+            return;
+        }
+        searcher.stop();
+        awaitPonderResult();
+    }
 
-        if (moves.size() == 0) {
-            System.out.println("No moves to evaluate");
-            scores.put(0, new Move(new Point(), new Point()));
-            return scores;
+    /**
+     * Ends pondering now that the opponent has moved. If they made the expected reply the ponder search becomes the
+     * search for this move: it is given the deadline and its move is returned. Otherwise it is stopped.
+     * @param board the position the AI is now to move in
+     * @param color the AI's colour
+     * @param deadline the System.nanoTime() value to stop searching at
+     * @return the ponder search's move if the opponent made the expected reply, otherwise null
+     */
+    private Move finishPondering(Board board, char color, long deadline) {
+        if (ponderResult == null) {
+            return null;
+        }
+        if (color != ponderColor || board.getWhite() != ponderBoard.getWhite() || board.getRed() != ponderBoard.getRed()
+                || board.getKings() != ponderBoard.getKings()) {
+            stopPondering();
+            return null;
         }
+        searcher.setDeadline(deadline);
+        Move ponderedMove = awaitPonderResult();
+        if (ponderedMove != null) {
+            publish(lastStatistics); // (the ponder thread's last write, made visible by waiting for it)
+        }
+        return ponderedMove;
+    }
 
-        if (moves.size() == 1) {
-            System.out.println("Only one move to take!");
-            scores.put(1, moves.get(0));
-            try {
-                Thread.sleep(200);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-            return scores;
+    /**
+     * @return the ponder search's move, once it has finished, or null if it failed
+     */
+    private Move awaitPonderResult() {
+        try {
+            return ponderResult.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            searcher.stop();
+            return null;
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            ponderResult = null;
+            ponderBoard = null;
         }
+    }
 
-        for (int depth = 1; depth < POSITIVE_INFINITY; depth++) {
-            HashMap<Integer, Move> currentDepthScores = new HashMap<>();
-            System.out.print("Depth = " + depth + ": ");
-            for (Move move : moves) {
-                if (LocalTime.now().isBefore(localTimeLimit)) {
-                    int result = (color == 'w') ? minimaxWhiteMaximising(board.updateLocation(move), depth, NEGATIVE_INFINITY, POSITIVE_INFINITY, 'r')
-                                                : minimaxRedMaximising(board.updateLocation(move), depth, NEGATIVE_INFINITY, POSITIVE_INFINITY, 'w');
-                    currentDepthScores.put(result, move);
-                    System.out.print(result + ", ");
-                } else {
-                    if (!scores.isEmpty()) {
-                        System.out.println("Time up!\nBest score: " + Collections.max(scores.keySet()));
-                    }
-                    return scores;
-                }
-            }
-            scores = currentDepthScores;
-            if (!currentDepthScores.isEmpty()) {
-                System.out.println("Best score for this depth: " + Collections.max(currentDepthScores.keySet()));
+    /**
+     * @param board the position the opponent is to move in
+     * @param opponentColor the opponent's colour
+     * @return the packed reply stored as best in the transposition table for the position, or 0 if there isn't one
+     */
+    private long expectedReply(Board board, char opponentColor) {
+        long entry = transpositionTable.probe(board.getHash() ^ Zobrist.sideToMove(opponentColor));
+        int tableMove = entry == 0 ? -1 : TranspositionTable.bestMove(entry);
+        long[] moves = new long[MoveGenerator.MAX_MOVES];
+        int count = moveGenerator.generateMoves(board, opponentColor, moves);
+        for (int i = 0; i < count; i++) {
+            if (PackedMove.fromTo(moves[i]) == tableMove) {
+                return moves[i];
             }
         }
-        return null;
+        return 0;
     }
 
-    private void checkValue(double value, String valueName) {
-        if (value > POSITIVE_INFINITY) {
-            System.out.println(valueName + " was above positive infinity");
-        } else if (value < NEGATIVE_INFINITY) {
-            System.out.println(valueName + " was below negative infinity");
-        }
+    /**
+     * Searches to exactly the given depth (iteratively deepening up to it) on the calling thread only, with no time
+     * limit, having forgotten everything from earlier searches (see newGame). Useful for comparing the size of search
+     * trees, through getNodeCount, as the search changes.
+     * @param board the current game state
+     * @param moves the valid moves for the given colour
+     * @param depth the depth to search to
+     * @param color the colour to move
+     * @return the best move found
+     */
+    public Move playFixedDepth(Board board, ArrayList<Move> moves, int depth, char color) {
+        beginSearch();
+        stopPondering();
+        long[] rootMoves = rootMoves(board, moves, color);
+        newGame();
+        newSearch();
+        HashMap<Integer, Long> scores = getScores(board, depth, rootMoves, color);
+        Move bestMove = bestMove(board, scores);
+        lastStatistics = statistics(scores);
+        publish(lastStatistics);
+        return bestMove;
     }
 
-    private void checkValues(double alpha, double beta, int checkNumber) {
-        checkValue(alpha, "alpha");
-        checkValue(beta, "beta");
+    /**
+     * Generates the complete (packed) moves to search at the root: those of the pieces the given valid moves start
+     * from, with each multi-jump as a single move
+     * @param board the current game state
+     * @param moves the valid moves for the given colour, as given to the Controller
+     * @param color the colour to move
+     * @return the packed root moves
+     */
+    private long[] rootMoves(Board board, ArrayList<Move> moves, char color) {
+        int origins = 0;
+        for (Move move : moves) {
+            origins |= 1 << Board.toSquare(move.origin.x, move.origin.y);
+        }
+        long[] generated = new long[MoveGenerator.MAX_MOVES];
+        int count = moveGenerator.generateMoves(board, color, generated);
+        long[] rootMoves = new long[count];
+        int rootCount = 0;
+        for (int i = 0; i < count; i++) {
+            if ((origins & (1 << PackedMove.from(generated[i]))) != 0) {
+                rootMoves[rootCount++] = generated[i];
+            }
+        }
+        return Arrays.copyOf(rootMoves, rootCount);
     }
 
-    private void checkValues(double alpha, double beta, double bestValue, int checkNumber) {
-        checkValue(alpha, "alpha");
-        checkValue(beta, "beta");
-        checkValue(bestValue, "bestValue");
+    /**
+     * @param board the current game state
+     * @param rootMoves the packed root moves
+     * @param color the colour to move
+     * @return the opening book's move for the position, or null if the book doesn't have the position (or one of
+     * the root moves)
+     */
+    private Move getBookMove(Board board, long[] rootMoves, char color) {
+        if (openingBook == null) {
+            return null;
+        }
+        int bookMove = openingBook.probe(board, color, bookRandom);
+        for (long move : rootMoves) {
+            if (PackedMove.fromTo(move) == bookMove) {
+                return PackedMove.toMove(move, board);
+            }
+        }
+        return null;
     }
 
-    private void checkValues(double alpha, double beta, double eval, double bestValue, int checkNumber) {
-        checkValue(alpha, "alpha");
-        checkValue(beta, "beta");
-        checkValue(eval, "eval");
-        checkValue(bestValue, "bestValue");
+    /**
+     * Builds the Move object for the best scoring root move, as only the Controller needs one
+     * @param board the root position
+     * @param scores the root moves' scores
+     * @return the best move, or an empty move if there were no moves to choose from
+     */
+    private Move bestMove(Board board, HashMap<Integer, Long> scores) {
+        if (scores.isEmpty()) {
+            return new Move(new Point(), new Point());
+        }
+        return PackedMove.toMove(scores.get(Collections.max(scores.keySet())), board);
     }
 
+    private static char opponent(char color) {
+        return color == 'w' ? 'r' : 'w';
+    }
 
     /**
-     * The minimax algorithm, including alpha-beta pruning.
-     * @param board the game state
-     * @param depth the max depth to generate the tree
-     * @param alpha alpha pruning parameter
-     * @param beta beta pruning parameter
-     * @param color essentially MIN/MAX player, here 'w' == MAX
-     * @return the best score possible for the AI (given that the human plays with the same technique!)
+     * Stops the search in progress, which then returns the best move of its last completed depth. Meant to be called
+     * from a different thread to the one searching. A search that hasn't quite started yet isn't stopped: to be sure
+     * of stopping a search handed to another thread, take a token for it first and stop that (see stop(long)).
      */
-    private int minimaxWhiteMaximising(Board board, int depth, double alpha, double beta, char color) {
-        if (depth == 0) { // if at depth limit
-            return weightedHeuristic(board);
+    public void stop() {
+        synchronized (searchLock) {
+            stop(searchNumber);
         }
+    }
 
-        int win = board.winCheck();
-        if (win != 0) { // if at leaf node
-            return win;
+    /**
+     * @return a token for the next search to start, taken before handing the search to another thread, so that
+     * stop(long) stops it however soon after it is called
+     */
+    public long nextSearchToken() {
+        synchronized (searchLock) {
+            return searchNumber + 1;
         }
+    }
 
-        if (color == 'w') { // if player == MAX
-            int bestValue = NEGATIVE_INFINITY;
-            ArrayList<Move> children = moveGenerator.findValidMoves(board, color);
-            if (children.isEmpty()) {
-                return NEGATIVE_INFINITY;
-            }
-            children = moveGenerator.updateValidMovesWithJumps(board, children, color);
-            for (Move m : children) { // for each child of node
-                int eval;
-                Board childBoard = board.updateLocation(m); // (make child)
-                // recursively call minimaxWhiteMaximising with MIN
-                eval = minimaxWhiteMaximising(childBoard, depth-1, alpha, beta, 'r');
-                bestValue = Math.max(bestValue, eval); // best value is max
-                alpha = Math.max(alpha, bestValue); // alpha is max
-                if (alpha > beta) { // pruning
-                    break;
-                }
+    /**
+     * Stops the search the token was taken for, and any before it: straight away if it has started, otherwise as soon
+     * as it starts, so that a stop sent just after a search is handed to another thread isn't lost
+     * @param token the search's token, from nextSearchToken
+     */
+    public void stop(long token) {
+        synchronized (searchLock) {
+            stoppedThrough = Math.max(stoppedThrough, token);
+            if (searchNumber <= token) {
+                searcher.stop();
             }
-            return bestValue;
         }
+    }
 
-        if (color == 'r') { // if player == MIN
-            int bestValue = POSITIVE_INFINITY;
-            ArrayList<Move> children = moveGenerator.findValidMoves(board, color);
-            if (children.isEmpty()) {
-                return POSITIVE_INFINITY;
+    /**
+     * Numbers a new search, for stop(long), when one of the play methods is called. A search adopted from pondering
+     * is stopped here if it has already been asked to; others are stopped once newSearch has reset the searcher.
+     */
+    private void beginSearch() {
+        synchronized (searchLock) {
+            searchNumber++;
+            if (stoppedThrough >= searchNumber) {
+                searcher.stop();
             }
-            children = moveGenerator.updateValidMovesWithJumps(board, children, color);
-            for (Move m : children) { // for each child of node
-                int eval;
-                Board childBoard = board.updateLocation(m); // (make child)
-                // recursively call minimaxWhiteMaximising with MAX
-                eval = minimaxWhiteMaximising(childBoard, depth-1, alpha, beta, 'w');
-                bestValue = Math.min(bestValue, eval); // best value is min
-                beta = Math.min(beta, bestValue); // beta is min
-                if (alpha > beta) { // pruning
-                    break;
-                }
+        }
+    }
+
+    /**
+     * Forgets everything learnt from earlier searches: the transposition table and the history scores. Searches keep
+     * them otherwise, as table entries are keyed by the colour to move and scored from its point of view, so stay right
+     * whichever colour the AI plays; this is only needed for repeatable searches, eg. to compare node counts.
+     */
+    public void newGame() {
+        stopPondering();
+        transpositionTable.clear();
+        searcher.clearHistory();
+    }
+
+    /**
+     * Gets ready for a new search, keeping the transposition table and history scores of the last but making room
+     * in the table for this search's entries (see TranspositionTable.newSearch)
+     */
+    private void newSearch() {
+        transpositionTable.newSearch();
+        synchronized (searchLock) { // (resetting the searcher mustn't lose a stop already asked for)
+            searcher.newSearch();
+            if (stoppedThrough >= searchNumber) {
+                searcher.stop();
             }
-            return bestValue;
         }
-        System.out.println("minimaxWhiteMaximising did not return correctly");
-        return 0;
+        searcher.resetNodes();
+        startStatistics(SearchStatistics.Source.SEARCH);
     }
 
-    private int minimaxRedMaximising(Board board, int depth, double alpha, double beta, char color) {
-        if (depth == 0) { // if at depth limit
-            return pieceAndRowHeuristicFlipped(board);
+    /**
+     * Stops any pondering and shuts down the AI's helper and ponder threads, which otherwise last as long as the JVM.
+     * The AI mustn't be used afterwards.
+     */
+    @Override
+    public void close() {
+        stopPondering();
+        if (helperPool != null) {
+            helperPool.shutdownNow();
+        }
+        if (ponderPool != null) {
+            ponderPool.shutdownNow();
         }
+    }
+
+    /**
+     * @return the number of nodes the calling thread's searcher visited in the last search (not counting helpers)
+     */
+    public long getNodeCount() {
+        return searcher.getNodes();
+    }
+
+    /**
+     * @return the number of quiescence nodes (captures searched past the depth limit) the calling thread's searcher
+     * visited in the last search
+     */
+    public long getQuiescenceNodeCount() {
+        return searcher.getQuiescenceNodes();
+    }
+
+    /**
+     * Makes the search look up positions in the given endgame tablebase rather than searching them, so endgames with
+     * few enough pieces are played perfectly and straight away
+     * @param tablebase the tablebase, or null to stop using one
+     */
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+        searcher.setTablebase(tablebase);
+    }
+
+    /**
+     * Makes the AI play moves from the given opening book, without searching, in positions the book has
+     * @param openingBook the book, or null to stop using one
+     * @param randomise true to choose between the book's moves for a position in proportion to their weights, false to
+     *                  always play the best
+     */
+    public void setOpeningBook(OpeningBook openingBook, boolean randomise) {
+        this.openingBook = openingBook;
+        this.bookRandom = randomise ? new Random() : null;
+    }
+
+    /**
+     * Turns the quiescence search of captures past the depth limit on or off, to measure the difference it makes
+     * @param quiescence true to resolve captures before evaluating (the default)
+     */
+    public void setQuiescence(boolean quiescence) {
+        newGame(); // the table's scores were found with or without it
+        this.quiescence = quiescence;
+        searcher.setQuiescence(quiescence);
+    }
+
+    /**
+     * Turns move ordering by captures, killer moves and history on or off, to measure the difference it makes
+     * @param moveOrdering true to order moves (the default)
+     */
+    public void setMoveOrdering(boolean moveOrdering) {
+        this.moveOrdering = moveOrdering;
+        searcher.setMoveOrdering(moveOrdering);
+    }
+
+    /**
+     * @param evaluator the evaluator to score positions with (pieceAndRowHeuristic, incrementally, by default)
+     */
+    public void setEvaluator(Evaluator evaluator) {
+        newGame(); // the table's scores are the old evaluator's
+        this.evaluator = evaluator;
+        searcher.setEvaluator(evaluator);
+    }
+
+    /**
+     * Sets the aspiration window: each iteration after the first searches the root moves with a window around the
+     * last iteration's score, which prunes more than the full window, and searches them again with the window widened
+     * on the side the score fell outside it (see SearchStatistics.getAspirationResearches). The best width depends on
+     * the evaluator's scale.
+     * @param aspirationWindow how far either side of the last score the window starts (ASPIRATION_WINDOW by default),
+     *                         or 0 to always search with the full window
+     */
+    public void setAspirationWindow(int aspirationWindow) {
+        this.aspirationWindow = Math.max(0, Math.min(aspirationWindow, Searcher.WIN_SCORE));
+    }
+
+    /**
+     * @param forcedMoveDelayMillis how long to pause before playing the only move available, so a human opponent can
+     *                              follow it (200ms by default, 0 for games between AIs)
+     */
+    public void setForcedMoveDelay(long forcedMoveDelayMillis) {
+        this.forcedMoveDelayMillis = forcedMoveDelayMillis;
+    }
 
-        int win = board.winCheck();
-        if (win != 0) { // if at leaf node
-            return -win;
+    /**
+     * Starts a helper search on each helper thread
+     * @param board the root position
+     * @param moves the packed root moves
+     * @param color the colour to move at the root
+     * @param helpers list to add the started helpers to
+     * @return the helpers' results, to wait on once they have been stopped
+     */
+    private List<Future<?>> startHelpers(Board board, long[] moves, char color, List<Searcher> helpers) {
+        List<Future<?>> helperResults = new ArrayList<>();
+        if (helperPool == null || moves.length < 2) { // nothing to search if there is only one move
+            return helperResults;
+        }
+        for (int i = 1; i < threads; i++) {
+            Searcher helper = new Searcher(transpositionTable);
+            helper.setTablebase(tablebase);
+            helper.setEvaluator(evaluator);
+            helper.setQuiescence(quiescence); // (helpers share the table, so must score positions the same way)
+            helper.setMoveOrdering(moveOrdering);
+            int helperNumber = i;
+            helpers.add(helper);
+            long[] helperMoves = moves.clone(); // the main search reorders its array as it goes
+            helperResults.add(helperPool.submit(() -> helper.searchUntilStopped(board, helperMoves, color,
+                                                                                helperNumber)));
         }
+        return helperResults;
+    }
 
-        if (color == 'r') { // if player == MAX
-            int bestValue = NEGATIVE_INFINITY;
-            ArrayList<Move> children = moveGenerator.findValidMoves(board, color);
-            if (children.isEmpty()) {
-                return NEGATIVE_INFINITY;
-            }
-            children = moveGenerator.updateValidMovesWithJumps(board, children, color);
-            for (Move m : children) { // for each child of node
-                int eval;
-                Board childBoard = board.updateLocation(m); // (make child)
-                // recursively call minimaxWhiteMaximising with MIN
-                eval = minimaxRedMaximising(childBoard, depth-1, alpha, beta, 'w');
-                bestValue = Math.max(bestValue, eval); // best value is max
-                alpha = Math.max(alpha, bestValue); // alpha is max
-                if (alpha > beta) { // pruning
-                    break;
-                }
+    /**
+     * Stops the given helpers and waits for them to finish, so none are left writing to the table after the search
+     * @param helpers the helpers to stop
+     * @param helperResults the helpers' results
+     */
+    private void stopHelpers(List<Searcher> helpers, List<Future<?>> helperResults) {
+        for (Searcher helper : helpers) {
+            helper.stop();
+        }
+        for (Future<?> helperResult : helperResults) {
+            try {
+                helperResult.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                e.printStackTrace();
             }
-            return bestValue;
         }
+    }
 
-        if (color == 'w') { // if player == MIN
-            int bestValue = POSITIVE_INFINITY;
-            ArrayList<Move> children = moveGenerator.findValidMoves(board, color);
-            if (children.isEmpty()) {
-                return POSITIVE_INFINITY;
-            }
-            children = moveGenerator.updateValidMovesWithJumps(board, children, color);
-            for (Move m : children) { // for each child of node
-                int eval;
-                Board childBoard = board.updateLocation(m); // (make child)
-                // recursively call minimaxWhiteMaximising with MAX
-                eval = minimaxRedMaximising(childBoard, depth-1, alpha, beta, 'r');
-                bestValue = Math.min(bestValue, eval); // best value is min
-                beta = Math.min(beta, bestValue); // beta is min
-                if (alpha > beta) { // pruning
-                    break;
-                }
+    /**
+     * @return the number of threads this AI searches with
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return the transposition table used by this AI's searches, eg. to read its hit rate counters
+     */
+    public TranspositionTable getTranspositionTable() {
+        return transpositionTable;
+    }
+
+    /**
+     * @param listener a listener to tell about each of this AI's searches as they happen
+     */
+    public void addSearchListener(SearchListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener the listener to stop telling about searches
+     */
+    public void removeSearchListener(SearchListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return the statistics of the last search to choose a move, or null if there hasn't been one
+     */
+    public SearchStatistics getLastSearchStatistics() {
+        return lastStatistics;
+    }
+
+    /**
+     * Starts recording a new search's statistics, once its searcher and table have been reset
+     * @param source where the search's move is expected to come from
+     */
+    private void startStatistics(SearchStatistics.Source source) {
+        statisticsSource = source;
+        statisticsStart = System.nanoTime();
+        iterationStart = statisticsStart;
+        probesAtStart = transpositionTable.getProbes();
+        hitsAtStart = transpositionTable.getHits();
+        iterations = 0;
+        aspirationFailLows = 0;
+        aspirationFailHighs = 0;
+    }
+
+    /**
+     * Records the time an iteration of the search took, and tells the listeners about it
+     * @param scores the iteration's root move scores
+     */
+    private void finishIteration(HashMap<Integer, Long> scores) {
+        if (iterations == iterationNanos.length) {
+            iterationNanos = Arrays.copyOf(iterationNanos, iterations * 2);
+        }
+        long now = System.nanoTime();
+        iterationNanos[iterations++] = now - iterationStart;
+        iterationStart = now;
+        if (!listeners.isEmpty()) {
+            SearchStatistics statistics = statistics(scores);
+            for (SearchListener listener : listeners) {
+                listener.iterationFinished(statistics);
             }
-            return bestValue;
         }
-        System.out.println("minimaxWhiteMaximising did not return correctly");
-        return 0;
     }
 
     /**
-     * The heuristic: a measure of how good the given board state is for the given colour.
-     * Currently takes into account whether the player has won and their piece advantage (counting kings as 2)
-     * @param board the board state to evaluate
-     * @return int, as a measure of how good the given board state is for the given colour
-     */
-    private int heuristic(Board board) {
-        // +2 for pawn, +4 for king
-        int whiteState = (board.getWhitePieces() + board.getWhiteKings()) * 2;
-        int redState = (board.getRedPieces() + board.getRedKings()) * 2;
-
-//        Piece[][] boardArray = board.getBoard();
-//        for (int i = 0; i < 8; i++) {
-//            for (int j = (i + 1) % 2; j < 8; j += 2) {
-//                Piece piece = boardArray[i][j];
-//                if (piece != null && (j == 0 || j == 7)) {
-//                    if (piece.getColour() == 'w') { // +1 for piece on edge of board
-//                        whiteState += 1;
-//                    } else {
-//                        redState += 1;
-//                    }
-//                }
-//            }
-//        }
-
-        return whiteState - redState;
-    }
-
-    private int weightedHeuristic(Board board) {
-        int redState = 0;
-        int whiteState = 0;
-
-        Piece[][] boardArray = board.getBoard();
-        for (int i = 0; i < 8; i++) {
-            for (int j = (i + 1) % 2; j < 8; j += 2) {
-                Piece piece = boardArray[i][j];
-                if (piece != null) {
-                    if (piece.getColour() == 'r') {
-                        redState += piece.isKing() ? (5 * positionWeightLookup[i][j]) : (3 * positionWeightLookup[i][j]);
-                    } else {
-                        whiteState += piece.isKing() ? (5 * positionWeightLookup[i][j]) : (3 * positionWeightLookup[i][j]);
-                    }
-                }
-            }
+     * @param scores the root moves' scores
+     * @return the statistics of the search so far, with its best move and score
+     */
+    private SearchStatistics statistics(HashMap<Integer, Long> scores) {
+        if (scores.isEmpty()) {
+            return statistics(0, 0);
         }
-        return whiteState - redState;
+        int bestScore = Collections.max(scores.keySet());
+        return statistics(scores.get(bestScore), bestScore);
     }
 
-    private int pieceAndRowHeuristic(Board board) {
-        int redState = 0;
-        int whiteState = 0;
+    private SearchStatistics statistics(long move, int score) {
+        return new SearchStatistics(statisticsSource, move, score, iterations, searcher.getSelectiveDepth(),
+                                    searcher.getNodes(), searcher.getQuiescenceNodes(), searcher.getBetaCutoffs(),
+                                    searcher.getFirstMoveCutoffs(), transpositionTable.getProbes() - probesAtStart,
+                                    transpositionTable.getHits() - hitsAtStart, searcher.getTablebaseHits(),
+                                    System.nanoTime() - statisticsStart, Arrays.copyOf(iterationNanos, iterations),
+                                    aspirationFailLows, aspirationFailHighs);
+    }
 
-        Piece[][] boardArray = board.getBoard();
-        for (int i = 0; i < 8; i++) {
-            for (int j = (i + 1) % 2; j < 8; j += 2) {
-                Piece piece = boardArray[i][j];
-                if (piece != null) {
-                    if (piece.getColour() == 'r') {
-                        redState += piece.isKing() ? 14 : (5 + (7 - i));
-                    } else {
-                        whiteState += piece.isKing() ? 14 : (5 + i);
-                    }
-                }
-            }
+    /**
+     * Makes the given statistics the last search's, and tells the listeners about them
+     */
+    private void publish(SearchStatistics statistics) {
+        lastStatistics = statistics;
+        for (SearchListener listener : listeners) {
+            listener.searchFinished(statistics);
         }
-        return whiteState - redState;
     }
 
-    private int pieceAndRowHeuristicFlipped(Board board) {
-        int redState = 0;
-        int whiteState = 0;
+    private HashMap<Integer, Long> getScores(Board board, int maxDepth, long[] moves, char color) {
+        HashMap<Integer, Long> scores = new HashMap<>();
 
-        Piece[][] boardArray = board.getBoard();
-        for (int i = 0; i < 8; i++) {
-            for (int j = (i + 1) % 2; j < 8; j += 2) {
-                Piece piece = boardArray[i][j];
-                if (piece != null) {
-                    if (piece.getColour() == 'r') {
-                        redState += piece.isKing() ? 14 : (5 + (7 - i));
-                    } else {
-                        whiteState += piece.isKing() ? 14 : (5 + i);
-                    }
-                }
+        if (moves.length == 0) {
+            return scores;
+        }
+
+        if (moves.length == 1) {
+            statisticsSource = SearchStatistics.Source.FORCED;
+            scores.put(1, moves[0]);
+            try {
+                Thread.sleep(forcedMoveDelayMillis);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
             }
+            return scores;
         }
-        return redState - whiteState;
-    }
 
-    private int pieceAndRowAndWeightedHeuristic(Board board) {
-        int redState = 0;
-        int whiteState = 0;
+        HashMap<Integer, Long> tablebaseScores = getTablebaseScores(board, moves, color);
+        if (tablebaseScores != null) { // the result of every move is already known, so there is nothing to search
+            statisticsSource = SearchStatistics.Source.TABLEBASE;
+            return tablebaseScores;
+        }
 
-        Piece[][] boardArray = board.getBoard();
-        for (int i = 0; i < 8; i++) {
-            for (int j = (i + 1) % 2; j < 8; j += 2) {
-                Piece piece = boardArray[i][j];
-                if (piece != null) {
-                    if (piece.getColour() == 'r') {
-                        redState += piece.isKing() ? (14 * positionWeightLookup[i][j]) : ((5 + (8 - i)) * positionWeightLookup[i][j]);
-                    } else {
-                        whiteState += piece.isKing() ? (14 * positionWeightLookup[i][j]) : ((5 + i) * positionWeightLookup[i][j]);
-                    }
+        tableMoveFirst(board, moves, color);
+        Board searchBoard = new Board(board); // one mutable board, made and unmade all the way down the tree
+        int lastScore = 0;
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            // search within a window around the last depth's score, as long as there is one and it isn't a win
+            boolean aspirate = depth > 1 && aspirationWindow > 0 && Math.abs(lastScore) < Searcher.WIN_THRESHOLD;
+            int lowDelta = aspirationWindow;
+            int highDelta = aspirationWindow;
+            int maxDelta = aspirationWindow * MAX_ASPIRATION_GROWTH;
+            int alpha = aspirate ? lastScore - lowDelta : NEGATIVE_INFINITY;
+            int beta = aspirate ? lastScore + highDelta : POSITIVE_INFINITY;
+            HashMap<Integer, Long> currentDepthScores = new HashMap<>();
+            int score = searchRoot(searchBoard, moves, depth, alpha, beta, color, currentDepthScores);
+            // if the score is outside the window it is only a bound, so search again with the window widened past it
+            while (!searcher.isStopped() && (score <= alpha || score >= beta)) {
+                if (score <= alpha) {
+                    aspirationFailLows++;
+                    lowDelta *= ASPIRATION_GROWTH;
+                    alpha = lowDelta > maxDelta || score <= -Searcher.WIN_THRESHOLD ? NEGATIVE_INFINITY
+                                                                                    : score - lowDelta;
+                } else {
+                    aspirationFailHighs++;
+                    highDelta *= ASPIRATION_GROWTH;
+                    beta = highDelta > maxDelta || score >= Searcher.WIN_THRESHOLD ? POSITIVE_INFINITY
+                                                                                   : score + highDelta;
                 }
+                currentDepthScores = new HashMap<>();
+                score = searchRoot(searchBoard, moves, depth, alpha, beta, color, currentDepthScores);
             }
+            if (searcher.isStopped()) { // out of time or stopped, so this depth can't be finished
+                return stoppedScores(scores, currentDepthScores, moves);
+            }
+            scores = currentDepthScores;
+            lastScore = score;
+            finishIteration(scores);
         }
-        return whiteState - redState;
+        return scores;
     }
 
-    private int complexHeuristic(Board board, char color) {
-        double kingFactor = 1.5;
-        double cellFactor = 0.75;
-
-        int redCellWeight = 0;
-        int whiteCellWeight = 0;
-
-        int redKings = board.getRedKings();
-        int whiteKings = board.getWhiteKings();
+    /**
+     * Searches every root move to the given depth within the given window, with principal variation search: the first
+     * move gets the whole window, and the rest only need showing to be worse, unless they turn out not to be. The best
+     * move is then moved to the front, to be searched first next time (the principal variation move).
+     * @param board the root position, which is left as it was found
+     * @param moves the packed root moves, in the order to search them
+     * @param depth the depth to search to
+     * @param alpha the bottom of the window
+     * @param beta the top of the window
+     * @param color the colour to move
+     * @param scores map to put each move that improved on the ones before it in, by its score
+     * @return the best score: at most alpha if every move failed low, at least beta if one failed high, and exact
+     * otherwise. Meaningless if the searcher was stopped.
+     */
+    private int searchRoot(Board board, long[] moves, int depth, int alpha, int beta, char color,
+                           HashMap<Integer, Long> scores) {
+        int bestScore = NEGATIVE_INFINITY;
+        int bestIndex = -1;
+        for (int i = 0; i < moves.length && bestScore < beta; i++) {
+            long move = moves[i];
+            int result;
+            if (i == 0) {
+                result = searcher.searchMove(board, move, depth, alpha, beta, color);
+            } else {
+                result = searcher.searchMove(board, move, depth, alpha, alpha + 1, color);
+                if (result > alpha && result < beta && !searcher.isStopped()) {
+                    result = searcher.searchMove(board, move, depth, alpha, beta, color);
+                }
+            }
+            if (searcher.isStopped()) {
+                return bestScore;
+            }
+            if (result > alpha) { // only improvements have exact scores, the rest are upper bounds
+                alpha = result;
+                bestIndex = i;
+                scores.put(result, move);
+            }
+            bestScore = Math.max(bestScore, result);
+        }
+        if (bestIndex > 0) {
+            long bestMove = moves[bestIndex];
+            moves[bestIndex] = moves[0];
+            moves[0] = bestMove;
+        }
+        return bestScore;
+    }
 
-        int redPieces = board.getRedPieces() - board.getRedKings();
-        int whitePieces = board.getWhitePieces() - board.getWhiteKings();
+    /**
+     * Moves the root position's best move in the transposition table, usually left by the principal variation of the
+     * search for the AI's last move, to the front of the root moves, so that even the first iteration searches it first
+     * @param board the root position
+     * @param moves the packed root moves, reordered in place
+     * @param color the colour to move
+     */
+    private void tableMoveFirst(Board board, long[] moves, char color) {
+        long entry = transpositionTable.probe(board.getHash() ^ Zobrist.sideToMove(color));
+        int tableMove = entry == 0 ? -1 : TranspositionTable.bestMove(entry);
+        for (int i = 1; i < moves.length; i++) {
+            if (PackedMove.fromTo(moves[i]) == tableMove) {
+                long move = moves[i];
+                moves[i] = moves[0];
+                moves[0] = move;
+                return;
+            }
+        }
+    }
 
-        for (int i = 0; i < 8; i++) {
-            for (int j = (i + 1) % 2; j < 8; j += 2) {
-                if (board.getBoard()[i][j] != null) {
-                    if (board.getBoard()[i][j].getColour() == 'r') {
-                        redCellWeight += positionWeightLookup[i][j];
-                    } else {
-                        whiteCellWeight += positionWeightLookup[i][j];
-                    }
-                }
+    /**
+     * Scores every root move by looking up the position it leads to in the tablebase
+     * @param board the root position
+     * @param moves the packed root moves
+     * @param color the colour to move
+     * @return the moves' exact scores, or null if any of the positions isn't in the tablebase
+     */
+    private HashMap<Integer, Long> getTablebaseScores(Board board, long[] moves, char color) {
+        if (tablebase == null || board.getPieces() > tablebase.getMaxPieces()) {
+            return null;
+        }
+        HashMap<Integer, Long> scores = new HashMap<>();
+        Board searchBoard = new Board(board);
+        char opponent = color == 'w' ? 'r' : 'w';
+        for (long move : moves) {
+            searchBoard.makeMove(move);
+            int value = tablebase.probe(searchBoard, opponent);
+            searchBoard.unmakeMove(move);
+            if (value == Tablebase.NOT_FOUND) {
+                return null;
             }
+            scores.putIfAbsent(-Searcher.tablebaseScore(value, 1), move);
         }
+        return scores;
+    }
 
-        int trade;
+    /**
+     * Picks the scores to use when the search is stopped part way through a depth: those of the last completed depth,
+     * or if not even the first depth was completed, whatever of it was (or failing that, just the first move)
+     * @param scores the scores of the last completed depth
+     * @param partialScores the scores found so far for the unfinished depth
+     * @param moves the packed root moves
+     * @return the scores to choose the best move from
+     */
+    private HashMap<Integer, Long> stoppedScores(HashMap<Integer, Long> scores, HashMap<Integer, Long> partialScores,
+                                                 long[] moves) {
+        if (scores.isEmpty()) {
+            scores = partialScores;
+            if (scores.isEmpty()) {
+                scores.put(0, moves[0]);
+            }
+        }
+        return scores;
+    }
 
+    /**
+     * The part of the COMPLEX heuristic which depends only on the number of pieces: fewer pieces is better for white
+     * once red is ahead, so that red is encouraged to trade pieces
+     * @param board the board state to evaluate
+     * @return the bonus, from white's point of view
+     */
+    static int tradeBonus(Board board) {
         if (board.getRedPieces() > board.getWhitePieces()) {
-            trade = 24 - board.getPieces();
-        } else {
-            trade = 24 + board.getPieces();
+            return 24 - board.getPieces();
         }
-        return (int) ((whitePieces-redPieces) + (kingFactor * (whiteKings-redKings)) + (cellFactor * (whiteCellWeight-redCellWeight)) * 1000) + trade;
-
+        return 24 + board.getPieces();
     }
 }
@@ -0,0 +1,274 @@
+package main.java.model;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Analyses a file of positions without the GUI, several at once, writing the AI's best move, score, depth and node
+ * count for each. Each worker thread has its own AI (and so its own transposition table, of the configured size), and
+ * positions are read only as fast as the workers take them, so a file of any size is analysed in bounded memory.
+ *
+ * Usage: "Analyser input output [engine] [threads]", with "-" for standard input or output and the engine described
+ * as read by EngineConfig.parse. Input lines are positions, either as written by Tuner ("colour:squares", anything
+ * after a space being ignored) or PDN FEN strings (see PdnGame); blank lines and lines starting '#' are skipped. An
+ * input file ending ".pdn" is read as games instead, analysing every position of every game.
+ *
+ * Each output line is "index position move score depth nodes": the position's index in the input (from 0) and the
+ * position as "colour:squares", then the best move in PDN notation and its score for the side to move. Lines are
+ * written as positions are finished, so not necessarily in input order. A position with no moves is lost, with the
+ * move "none". Forced moves are played through, so that the score and depth are those of the position after them.
+ * The throughput, in positions per second, is reported on standard error as the analysis goes.
+ *
+ * @author tp275
+ */
+public final class Analyser {
+
+    private static final int QUEUE_LENGTH_PER_THREAD = 16;
+    private static final int REPORT_INTERVAL = 1000; // positions between throughput reports
+    private static final int MAX_FORCED_PLIES = 32; // forced moves played through before searching anyway
+
+    private final EngineConfig engine;
+    private final int threads;
+    private final BlockingQueue<Position> queue;
+    private final Position end = new Position(-1, null, 'r'); // one is queued for each worker when the input runs out
+
+    // guarded by output
+    private Writer output;
+    private long finished;
+    private long start;
+    private volatile Exception failure; // the first error a worker hit, after which workers only drain the queue
+
+    /**
+     * @param engine the configuration of each worker's AI
+     * @param threads the number of positions to analyse at once
+     */
+    public Analyser(EngineConfig engine, int threads) {
+        this.engine = engine;
+        this.threads = threads;
+        this.queue = new ArrayBlockingQueue<>(threads * QUEUE_LENGTH_PER_THREAD);
+    }
+
+    /**
+     * @param args the input and output files, then optionally the engine description (default EngineConfig's
+     *             defaults) and the number of positions to analyse at once (default one per processor)
+     * @throws IOException if a file can't be read or written, or a position can't be read
+     * @throws InterruptedException if interrupted while waiting for the workers
+     * @throws ExecutionException if a worker fails
+     */
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        if (args.length < 2) {
+            System.err.println("Usage: Analyser input output [engine] [threads]");
+            System.err.println("eg. Analyser positions.txt analysis.txt depth=10,hash=64 4");
+            return;
+        }
+        EngineConfig engine = EngineConfig.parse(args.length > 2 ? args[2] : "");
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        Analyser analyser = new Analyser(engine, threads);
+        boolean pdn = args[0].endsWith(".pdn");
+        try (Reader input = openInput(args[0]); Writer output = openOutput(args[1])) {
+            analyser.analyse(input, pdn, output);
+        }
+    }
+
+    private static Reader openInput(String name) throws IOException {
+        return name.equals("-") ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+                                : Files.newBufferedReader(Paths.get(name), StandardCharsets.UTF_8);
+    }
+
+    private static Writer openOutput(String name) throws IOException {
+        return name.equals("-") ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+                                : Files.newBufferedWriter(Paths.get(name), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Analyses every position in the input, writing a line for each to the output
+     * @param input the positions to analyse, one a line, or PDN games
+     * @param pdn true if the input is PDN games, every position of which is to be analysed
+     * @param output where to write the results
+     * @return the number of positions analysed
+     * @throws IOException if the input can't be read or a position in it can't, or the output can't be written
+     * @throws InterruptedException if interrupted while waiting for the workers
+     * @throws ExecutionException if a worker fails
+     */
+    public long analyse(Reader input, boolean pdn, Writer output)
+            throws IOException, InterruptedException, ExecutionException {
+        this.output = output instanceof BufferedWriter ? output : new BufferedWriter(output);
+        finished = 0;
+        start = System.nanoTime();
+        failure = null;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long count;
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                workers.add(pool.submit(worker()));
+            }
+            try {
+                count = pdn ? queueGames(new PdnReader(input)) : queueLines(new BufferedReader(input));
+            } finally { // let the workers finish what was read, even if the rest couldn't be
+                for (int i = 0; i < threads; i++) {
+                    queue.put(end);
+                }
+                for (Future<?> worker : workers) {
+                    worker.get();
+                }
+                this.output.flush();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+        if (finished % REPORT_INTERVAL != 0) {
+            report();
+        }
+        return count;
+    }
+
+    private long queueLines(BufferedReader reader) throws IOException, InterruptedException {
+        long index = 0;
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null && failure == null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String position = line.split("\\s+")[0];
+            try {
+                if (position.length() > 2 && position.charAt(1) == ':' && "wr".indexOf(position.charAt(0)) >= 0) {
+                    queue.put(new Position(index++, Board.parse(position.substring(2)), position.charAt(0)));
+                } else {
+                    queue.put(new Position(index++, PdnGame.parseFen(position), PdnGame.fenColour(position)));
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Line " + lineNumber + ": can't read position " + position, e);
+            }
+        }
+        return index;
+    }
+
+    private long queueGames(PdnReader reader) throws IOException, InterruptedException {
+        long index = 0;
+        for (PdnGame game = reader.next(); game != null && failure == null; game = reader.next()) {
+            Board board = game.getStartingBoard();
+            for (int ply = 0; ply <= game.getMoveCount(); ply++) {
+                Board position = new Board(board.getWhite(), board.getRed(), board.getKings());
+                queue.put(new Position(index++, position, game.getColour(ply)));
+                if (ply < game.getMoveCount()) {
+                    board.makeMove(game.getMove(ply));
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return a worker, analysing positions from the queue with its own AI until it takes the end marker
+     */
+    private Callable<Void> worker() {
+        return () -> {
+            MoveGenerator moveGenerator = new MoveGenerator();
+            try (AI ai = engine.createAI()) {
+                for (Position position = queue.take(); position != end; position = queue.take()) {
+                    if (failure != null) {
+                        continue; // keep taking positions, so that the reader isn't left waiting for room
+                    }
+                    try {
+                        write(position, analysePosition(ai, moveGenerator, position));
+                    } catch (IOException | RuntimeException e) {
+                        synchronized (output) {
+                            failure = failure == null ? e : failure;
+                        }
+                    }
+                }
+            }
+            return null;
+        };
+    }
+
+    /**
+     * @return the position's best move, score, depth and node count, as written to the output. The AI doesn't search
+     * a forced move, so forced moves are played through and the first position with a choice is searched instead.
+     */
+    private String analysePosition(AI ai, MoveGenerator moveGenerator, Position position) {
+        Board board = new Board(position.board);
+        char colour = position.colour;
+        long bestMove = -1;
+        for (int ply = 0; ply < MAX_FORCED_PLIES; ply++) {
+            int sign = ply % 2 == 0 ? 1 : -1; // scores after an odd number of forced moves are the opponent's
+            ArrayList<Move> moves = moveGenerator.findCompleteMoves(board, colour);
+            if (moves.isEmpty()) {
+                return (bestMove < 0 ? "none" : notation(position, bestMove)) + " " + sign * (ply - Searcher.WIN_SCORE)
+                       + " " + ply + " 0";
+            }
+            long move = PackedMove.fromMove(moves.get(0));
+            if (moves.size() > 1 || ply == MAX_FORCED_PLIES - 1) {
+                move = PackedMove.fromMove(engine.play(ai, new Board(board), moves, colour));
+                SearchStatistics statistics = ai.getLastSearchStatistics();
+                return notation(position, bestMove < 0 ? move : bestMove) + " " + sign * statistics.getScore() + " "
+                       + (ply + statistics.getDepth()) + " " + statistics.getNodes();
+            }
+            bestMove = bestMove < 0 ? move : bestMove;
+            board.makeMove(move);
+            colour = colour == 'w' ? 'r' : 'w';
+        }
+        throw new AssertionError(); // the last ply always searches
+    }
+
+    private static String notation(Position position, long move) {
+        return PdnGame.toNotation(move, position.board, position.colour);
+    }
+
+    private void write(Position position, String analysis) throws IOException {
+        synchronized (output) {
+            output.write(position.index + " " + position.colour + ":" + position.board.toSquareString() + " " + analysis
+                         + "\n");
+            if (++finished % REPORT_INTERVAL == 0) {
+                report();
+            }
+        }
+    }
+
+    private void report() {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("Analysed %d positions in %.1f s, %.1f positions/s%n", finished, seconds,
+                          finished / Math.max(seconds, 1e-9));
+    }
+
+    /**
+     * A position to analyse, and its index in the input
+     */
+    private static final class Position {
+        final long index;
+        final Board board;
+        final char colour;
+
+        Position(long index, Board board, char colour) {
+            this.index = index;
+            this.board = board;
+            this.colour = colour;
+        }
+    }
+}
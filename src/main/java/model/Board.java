@@ -1,190 +1,409 @@
 package main.java.model;
 
 import java.awt.*;
+import java.util.Arrays;
 
 /**
- * The state representation: an 8x8 2d array holding Piece objects.
+ * The state representation: three 32-bit masks over the playable (dark) squares of the board, one for white pieces,
+ * one for red pieces and one for kings of either colour.
+ *
+ * Squares are numbered 0-31 from the top-left, four per row, so square = row * 4 + column / 2. White starts on squares
+ * 0-11 and moves down the board, red starts on squares 20-31 and moves up it.
  *
  * @author tp275
  */
 public class Board {
 
-    private Piece[][] board;
-    private int whitePieces;
-    private int redPieces;
-    private int whiteKings;
-    private int redKings;
+    private static final int INITIAL_WHITE = 0x00000FFF;
+    private static final int INITIAL_RED = 0xFFF00000;
+
+    private int white;
+    private int red;
+    private int kings;
+    private long hash; // Zobrist hash of the pieces on the board, kept up to date as moves are made
+    private PieceSquareTable pieceSquareTable; // null unless an evaluator wants its score kept up to date
+    private int pieceSquareScore; // the table's score of the pieces on the board
+
+    // Undo records for makeMove/unmakeMove, one entry per move currently made on this board
+    private long[] undoHash = new long[32];
+    private int[] undoScore = new int[32];
+    private int[] undoCaptured = new int[32];
+    private int[] undoCapturedKings = new int[32];
+    private boolean[] undoPromoted = new boolean[32];
+    private int undoCount = 0;
 
     /**
-     * Creates and sets up pieces on the board in their initial state, and initialises piece counts
+     * Creates and sets up pieces on the board in their initial state
      */
     public Board() {
-        this.board = getInitialBoard();
-        this.whitePieces = 12;
-        this.redPieces = 12;
-        this.whiteKings = 0;
-        this.redKings = 0;
+        this.white = INITIAL_WHITE;
+        this.red = INITIAL_RED;
+        this.kings = 0;
+        this.hash = Zobrist.hash(white, red, kings);
     }
 
     /**
-     * Creates a new Board object with it's board as the given Piece[][] - useful for copying
-     * Also sets piece counts as they should be
-     * @param board the state representation for the board to hold
+     * Creates a new Board object holding the same position as the given board - useful for copying
+     * @param board the board to copy
      */
-    public Board(Piece[][] board) {
-        this.redPieces = 0;
-        this.whitePieces = 0;
-        this.board = new Piece[8][8];
+    public Board(Board board) {
+        this.white = board.white;
+        this.red = board.red;
+        this.kings = board.kings;
+        this.hash = board.hash;
+        this.pieceSquareTable = board.pieceSquareTable;
+        this.pieceSquareScore = board.pieceSquareScore;
+    }
 
-        for (int i = 0; i < 8; i++) {
-            for (int j = (i+1)%2; j < 8; j+=2) {
-                Piece oldPiece = board[i][j];
-                if (oldPiece != null) {
-                    increaseCounts(oldPiece);
-                    this.board[i][j] = new Piece(oldPiece.getColour(), oldPiece.isKing());
-                }
-            }
-        }
+    /**
+     * Creates a new Board object from the given square masks
+     * @param white mask of squares holding white pieces
+     * @param red mask of squares holding red pieces
+     * @param kings mask of squares holding kings (of either colour)
+     */
+    public Board(int white, int red, int kings) {
+        this.white = white;
+        this.red = red;
+        this.kings = kings & (white | red);
+        this.hash = Zobrist.hash(this.white, this.red, this.kings);
     }
 
     /**
-     * Assume Piece is being added, so increase relevant piececounts
-     * @param oldPiece the Piece to update with
+     * Creates a Board from a string of 32 characters, one for each square in order (as made by toSquareString): 'w'
+     * or 'r' for a man, 'W' or 'R' for a king and '-' for an empty square. Whitespace is ignored.
+     * @param squares the string to read
+     * @return the board
+     * @throws IllegalArgumentException if the string isn't 32 valid square characters
      */
-    private void increaseCounts(Piece oldPiece) {
-        if (oldPiece.getColour() == 'r') {
-            if (oldPiece.isKing()) {
-                this.redKings++;
+    public static Board parse(String squares) {
+        String trimmed = squares.replaceAll("\\s", "");
+        if (trimmed.length() != 32) {
+            throw new IllegalArgumentException("Expected 32 squares but got " + trimmed.length() + ": " + squares);
+        }
+        int white = 0;
+        int red = 0;
+        int kings = 0;
+        for (int square = 0; square < 32; square++) {
+            char c = trimmed.charAt(square);
+            if (c == 'w' || c == 'W') {
+                white |= 1 << square;
+            } else if (c == 'r' || c == 'R') {
+                red |= 1 << square;
+            } else if (c != '-') {
+                throw new IllegalArgumentException("Unknown square '" + c + "' in " + squares);
             }
-            this.redPieces++;
-        } else {
-            if (oldPiece.isKing()) {
-                this.whiteKings++;
+            if (c == 'W' || c == 'R') {
+                kings |= 1 << square;
             }
-            this.whitePieces++;
         }
+        return new Board(white, red, kings);
     }
 
     /**
-     * Returns board array with pieces in their initial positions
-     * @return Piece[][] with pieces in their initial positions
+     * @return the position as read by parse: one character per square, in square order
      */
-    private Piece[][] getInitialBoard() {
-        Piece[][] newBoard = new Piece[8][8];
-        for (int i = 0; i < 8; i++) {
-            if (i % 2 == 0) {
-                newBoard[1][i] = new Piece('w');
-                newBoard[5][i] = new Piece('r');
-                newBoard[7][i] = new Piece('r');
+    public String toSquareString() {
+        StringBuilder squares = new StringBuilder(32);
+        for (int square = 0; square < 32; square++) {
+            int bit = 1 << square;
+            if ((white & bit) != 0) {
+                squares.append((kings & bit) != 0 ? 'W' : 'w');
+            } else if ((red & bit) != 0) {
+                squares.append((kings & bit) != 0 ? 'R' : 'r');
             } else {
-                newBoard[0][i] = new Piece('w');
-                newBoard[2][i] = new Piece('w');
-                newBoard[6][i] = new Piece('r');
+                squares.append('-');
             }
         }
-        return newBoard;
+        return squares.toString();
     }
 
     /**
-     * @return the current board, as Piece[][]
+     * Returns the square number (0-31) of the given board location, or -1 if it is off the board or a light square
+     * @param row the row of the location
+     * @param col the column of the location
+     * @return the square number of the location, or -1 if it isn't playable
      */
-    public Piece[][] getBoard() {
-        return board;
+    public static int toSquare(int row, int col) {
+        if (row < 0 || row > 7 || col < 0 || col > 7 || ((row + col) & 1) == 0) {
+            return -1;
+        }
+        return (row << 2) | (col >> 1);
+    }
+
+    /**
+     * @param square a square number (0-31)
+     * @return the row of the given square
+     */
+    public static int toRow(int square) {
+        return square >> 2;
+    }
+
+    /**
+     * @param square a square number (0-31)
+     * @return the column of the given square
+     */
+    public static int toColumn(int square) {
+        return ((square & 3) << 1) | (((square >> 2) + 1) & 1);
+    }
+
+    /**
+     * @return mask of squares holding white pieces
+     */
+    public int getWhite() {
+        return white;
+    }
+
+    /**
+     * @return mask of squares holding red pieces
+     */
+    public int getRed() {
+        return red;
+    }
+
+    /**
+     * @return mask of squares holding kings of either colour
+     */
+    public int getKings() {
+        return kings;
+    }
+
+    /**
+     * @return the Zobrist hash of the pieces on the board (not including the side to move)
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * @return mask of all empty playable squares
+     */
+    public int getEmpty() {
+        return ~(white | red);
+    }
+
+    /**
+     * @param colour 'w' or 'r'
+     * @return mask of squares holding pieces of the given colour
+     */
+    public int getPieces(char colour) {
+        return colour == 'w' ? white : red;
     }
 
     /**
-     * Returns the Piece at the given row, column location in the board array
+     * Returns the Piece at the given row, column location on the board. This builds a new Piece each call, so it
+     * shouldn't be used anywhere performance sensitive!
      * @param row the row number of the wanted piece
      * @param col the column number of the wanted piece
-     * @return the Piece at the selected row, column location in the board array
+     * @return the Piece at the selected row, column location, or null if there isn't one
      */
     public Piece getPiece(int row, int col) {
-        return board[row][col];
+        int square = toSquare(row, col);
+        if (square < 0) {
+            return null;
+        }
+        int bit = 1 << square;
+        if ((white & bit) != 0) {
+            return new Piece('w', (kings & bit) != 0);
+        } else if ((red & bit) != 0) {
+            return new Piece('r', (kings & bit) != 0);
+        }
+        return null;
     }
 
-    public Piece[][] deepCopy(Piece[][] original) {
-        Piece[][] result = new Piece[8][8];
-        for (int i = 0; i < 8; i++) {
-            for (int j = (i+1)%2; j < 8; j+=2) {
-                Piece oldPiece = original[i][j];
-                if (oldPiece != null) {
-                    result[i][j] = new Piece(oldPiece.getColour(), oldPiece.isKing());
-                }
+    /**
+     * Builds the mask of squares whose pieces are removed by the given move
+     * @param move the move to read
+     * @return mask of captured squares (0 if the move isn't a jump)
+     */
+    static int capturedMask(Move move) {
+        int captured = 0;
+        if (move.hasPieceToRemove()) {
+            for (Point pieceToRemove : move.getPiecesToRemove()) {
+                captured |= 1 << toSquare(pieceToRemove.x, pieceToRemove.y);
             }
         }
-        return result;
+        return captured;
     }
 
     /**
      * Returns a copy of the current board after being updated with the given move.
-     * This also includes updating kings and piece counts.
+     * This also includes updating kings.
      * @param move the move to update the board with
      * @return a copy of the current board after being updated with the given move
      */
     public Board updateLocation(Move move) {
-        Piece[][] boardCopy = deepCopy(board);
-        // Store piece at origin and delete it from board
-        Piece originPiece = boardCopy[move.origin.x][move.origin.y];
-        if (move.kingPiece) {
-            if (originPiece != null) {
-                originPiece.setKing();
-            }
+        Board board = new Board(this);
+        board.applyMove(PackedMove.fromMove(move));
+        return board;
+    }
+
+    /**
+     * Plays the given move on this board in place, recording what is needed to take it back with unmakeMove.
+     * Moves must be unmade in the reverse order to which they were made.
+     * @param move the move to make
+     * @throws IllegalArgumentException if there is no piece on the move's origin
+     */
+    public void makeMove(Move move) {
+        makeMove(PackedMove.fromMove(move));
+    }
+
+    /**
+     * Takes back the given move, which must be the last move made on this board with makeMove
+     * @param move the move to take back
+     */
+    public void unmakeMove(Move move) {
+        unmakeMove(PackedMove.fromMove(move));
+    }
+
+    /**
+     * Plays the given packed move (see PackedMove) on this board in place, recording what is needed to take it back
+     * with unmakeMove. Moves must be unmade in the reverse order to which they were made.
+     * @param move the packed move to make
+     * @throws IllegalArgumentException if there is no piece on the move's origin, as unmakeMove couldn't take it back
+     */
+    public void makeMove(long move) {
+        if (((white | red) & (1 << PackedMove.from(move))) == 0) {
+            throw new IllegalArgumentException("No piece on square " + PackedMove.from(move) + " to move");
         }
-        boardCopy[move.origin.x][move.origin.y] = null;
-        // If there is an intermediate piece (in a jump), update piece counts then remove it
-        if (move.hasPieceToRemove()) {
-            for (Point pieceToRemove : move.getPiecesToRemove()) {
-//                decreaseCounts(boardCopy[pieceToRemove.x][pieceToRemove.y]);
-                boardCopy[pieceToRemove.x][pieceToRemove.y] = null;
-            }
+        if (undoCount == undoCaptured.length) {
+            undoHash = Arrays.copyOf(undoHash, undoCount * 2);
+            undoScore = Arrays.copyOf(undoScore, undoCount * 2);
+            undoCaptured = Arrays.copyOf(undoCaptured, undoCount * 2);
+            undoCapturedKings = Arrays.copyOf(undoCapturedKings, undoCount * 2);
+            undoPromoted = Arrays.copyOf(undoPromoted, undoCount * 2);
         }
-        // Now insert the original piece at the destination
-        boardCopy[move.destination.x][move.destination.y] = originPiece;
-        return new Board(boardCopy);
+        int captured = PackedMove.captured(move);
+        undoHash[undoCount] = hash;
+        undoScore[undoCount] = pieceSquareScore;
+        undoCaptured[undoCount] = captured;
+        undoCapturedKings[undoCount] = captured & kings;
+        undoPromoted[undoCount] = PackedMove.isPromotion(move) && (kings & (1 << PackedMove.from(move))) == 0;
+        undoCount++;
+        applyMove(move);
     }
 
     /**
-     * Assume Piece is being removed, so decrease relevant piececounts
-     * @param oldPiece the Piece to update with
+     * Takes back the given packed move, which must be the last move made on this board with makeMove. Restores the
+     * moved piece (un-kinging it if the move promoted it) and every captured piece, kings included.
+     * @param move the packed move to take back
      */
-    private void decreaseCounts(Piece oldPiece) {
-        if (oldPiece != null) {
-            if (oldPiece.getColour() == 'r') {
-                if (oldPiece.isKing()) {
-                    this.redKings--;
-                }
-                this.redPieces--;
-            } else {
-                if (oldPiece.isKing()) {
-                    this.whiteKings--;
-                }
-                this.whitePieces--;
-            }
+    public void unmakeMove(long move) {
+        undoCount--;
+        int from = 1 << PackedMove.from(move);
+        int to = 1 << PackedMove.to(move);
+        int captured = undoCaptured[undoCount];
+
+        if (undoPromoted[undoCount]) {
+            kings &= ~to;
+        }
+        if ((kings & to) != 0) {
+            kings = (kings & ~to) | from;
+        }
+        if ((white & to) != 0) {
+            white = (white & ~to) | from;
+            red |= captured;
+        } else {
+            red = (red & ~to) | from;
+            white |= captured;
         }
+        kings |= undoCapturedKings[undoCount];
+        hash = undoHash[undoCount];
+        pieceSquareScore = undoScore[undoCount];
     }
 
     /**
-     * Reverses the given move on the current board
-     * @param move the Move to reverse
-     * @param color the colour of the moving piece
+     * Moves the piece at the move's origin to its destination, removing the pieces it captures and kinging the piece
+     * if the move says to. Does nothing if there is no piece at the origin, as updateLocation always has, but makeMove
+     * checks for that first so that every move it makes can be unmade.
+     * @param move the packed move to apply
      */
-    public void reverseMove(Move move, char color) {
-        Piece dest = this.board[move.destination.x][move.destination.y];
-        this.board[move.origin.x][move.origin.y] = dest;
-        this.board[move.destination.x][move.destination.y] = null;
-        if (move.hasPieceToRemove()) {
-            for (Point pieceToRemove : move.getPiecesToRemove()) {
-                if (color == 'r') {
-                    Piece pieceToAdd = new Piece('w');
-                    this.board[pieceToRemove.x][pieceToRemove.y] = pieceToAdd;
-                    increaseCounts(pieceToAdd);
-                } else {
-                    Piece pieceToAdd = new Piece('r');
-                    this.board[pieceToRemove.x][pieceToRemove.y] = pieceToAdd;
-                    increaseCounts(pieceToAdd);
-                }
-            }
+    private void applyMove(long move) {
+        int fromSquare = PackedMove.from(move);
+        int toSquare = PackedMove.to(move);
+        int captured = PackedMove.captured(move);
+        int from = 1 << fromSquare;
+        int to = 1 << toSquare;
+        if (((white | red) & from) == 0) {
+            return; // nothing at the origin, so nothing to move
+        }
+        boolean king = (kings & from) != 0 || PackedMove.isPromotion(move);
+
+        for (int pieces = captured & (white | red); pieces != 0; pieces &= pieces - 1) {
+            int square = Integer.numberOfTrailingZeros(pieces);
+            removePiece(pieceType(square), square);
+        }
+        removePiece(pieceType(fromSquare), fromSquare);
+
+        white &= ~captured;
+        red &= ~captured;
+        kings &= ~(captured | from);
+        if ((white & from) != 0) {
+            white = (white & ~from) | to;
+            addPiece(king ? Zobrist.WHITE_KING : Zobrist.WHITE_MAN, toSquare);
+        } else {
+            red = (red & ~from) | to;
+            addPiece(king ? Zobrist.RED_KING : Zobrist.RED_MAN, toSquare);
         }
+        if (king) {
+            kings |= to;
+        }
+    }
+
+    /**
+     * Updates the hash (and piece-square score, if kept) for a piece leaving a square
+     */
+    private void removePiece(int piece, int square) {
+        hash ^= Zobrist.key(piece, square);
+        if (pieceSquareTable != null) {
+            pieceSquareScore -= pieceSquareTable.value(piece, square);
+        }
+    }
+
+    /**
+     * Updates the hash (and piece-square score, if kept) for a piece arriving on a square
+     */
+    private void addPiece(int piece, int square) {
+        hash ^= Zobrist.key(piece, square);
+        if (pieceSquareTable != null) {
+            pieceSquareScore += pieceSquareTable.value(piece, square);
+        }
+    }
+
+    /**
+     * Makes this board keep the given table's score of its pieces up to date as moves are made and unmade, starting
+     * from the current position, so that evaluating it doesn't mean adding up every piece again. Mustn't be called
+     * while there are moves still to be unmade.
+     * @param pieceSquareTable the table to keep the score of, or null to stop keeping one
+     */
+    public void setPieceSquareTable(PieceSquareTable pieceSquareTable) {
+        this.pieceSquareTable = pieceSquareTable;
+        this.pieceSquareScore = pieceSquareTable == null ? 0 : pieceSquareTable.score(white, red, kings);
+    }
+
+    /**
+     * @return the piece-square table whose score this board keeps, or null if it doesn't keep one
+     */
+    public PieceSquareTable getPieceSquareTable() {
+        return pieceSquareTable;
+    }
+
+    /**
+     * @return the kept piece-square table's score of the pieces on the board, from white's point of view
+     */
+    int getPieceSquareScore() {
+        return pieceSquareScore;
+    }
+
+    /**
+     * @param square an occupied square
+     * @return the Zobrist piece type of the piece on the given square
+     */
+    private int pieceType(int square) {
+        boolean king = ((kings >>> square) & 1) != 0;
+        if (((white >>> square) & 1) != 0) {
+            return king ? Zobrist.WHITE_KING : Zobrist.WHITE_MAN;
+        }
+        return king ? Zobrist.RED_KING : Zobrist.RED_MAN;
     }
 
     /**
@@ -192,18 +411,18 @@ public class Board {
      * @return 1 if red win, -1 if white win, else 0
      */
     public int winCheck() {
-        if (this.whitePieces == 0) {
+        if (this.white == 0) {
             return AI.NEGATIVE_INFINITY;
-        } else if (this.redPieces == 0) {
+        } else if (this.red == 0) {
             return AI.POSITIVE_INFINITY;
         }
         return 0;
     }
 
     public int winCheck(MoveGenerator moveGenerator) {
-        if (this.whitePieces == 0 || moveGenerator.findValidMoves(this, 'w').size() == 0) {
+        if (this.white == 0 || moveGenerator.findValidMoves(this, 'w').size() == 0) {
             return AI.NEGATIVE_INFINITY;
-        } else if (this.redPieces == 0 || moveGenerator.findValidMoves(this, 'r').size() == 0) {
+        } else if (this.red == 0 || moveGenerator.findValidMoves(this, 'r').size() == 0) {
             return AI.POSITIVE_INFINITY;
         }
         return 0;
@@ -213,35 +432,35 @@ public class Board {
      * @return total # pieces on board
      */
     public int getPieces() {
-        return whitePieces + redPieces;
+        return Integer.bitCount(white | red);
     }
 
     /**
      * @return # white pieces on board
      */
     public int getWhitePieces() {
-        return whitePieces;
+        return Integer.bitCount(white);
     }
 
     /**
      * @return # red pieces on board
      */
     public int getRedPieces() {
-        return redPieces;
+        return Integer.bitCount(red);
     }
 
     /**
      * @return # white kings on board
      */
     public int getWhiteKings() {
-        return whiteKings;
+        return Integer.bitCount(white & kings);
     }
 
     /**
      * @return # red kings on board
      */
     public int getRedKings() {
-        return redKings;
+        return Integer.bitCount(red & kings);
     }
 
     @Override
@@ -253,15 +472,14 @@ public class Board {
                 if (j == 0) {
                     boardString.append(i + 1).append(" ");
                 }
-                Piece piece = board[i][j];
-                if (piece == null) {
-                    boardString.append('-');
+                int square = toSquare(i, j);
+                int bit = square < 0 ? 0 : 1 << square;
+                if ((white & bit) != 0) {
+                    boardString.append((kings & bit) != 0 ? 'W' : 'w');
+                } else if ((red & bit) != 0) {
+                    boardString.append((kings & bit) != 0 ? 'R' : 'r');
                 } else {
-                    if (piece.isKing()) {
-                        boardString.append(Character.toUpperCase(piece.getColour()));
-                    } else {
-                        boardString.append(piece.getColour());
-                    }
+                    boardString.append('-');
                 }
                 boardString.append(" ");
             }
@@ -0,0 +1,173 @@
+package main.java.model;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+/**
+ * A configuration of the AI to play in a Tournament: its heuristic, how long it searches for each move, and which of
+ * the search's features are turned on.
+ *
+ * Configurations are written as comma separated key=value pairs, eg. "name=base,heuristic=COMPLEX,nodes=200000", with
+ * the keys:
+ * name - the name to report results under (default the whole description)
+ * heuristic - one of the Heuristic names (default PIECE_AND_ROW)
+ * incremental - true or false, to evaluate with the heuristic's IncrementalEvaluator or by scanning (default true)
+ * weights - a weight file written by Tuner, to evaluate with instead of the heuristic
+ * time - milliseconds to search each move for
+ * nodes - nodes to search each move (the default limit, of 100000 nodes, if neither time nor depth is given)
+ * depth - fixed depth to search each move to
+ * quiescence, ordering - true or false, to turn the quiescence search or move ordering on or off (default true)
+ * aspiration - the aspiration window either side of the last iteration's score (see AI.setAspirationWindow), or 0 to
+ *     search every iteration with the full window
+ * hash - transposition table megabytes (default 16)
+ * threads - search threads (default 1)
+ *
+ * @author tp275
+ */
+public final class EngineConfig {
+
+    private static final long DEFAULT_NODES = 100000;
+    private static final int DEFAULT_HASH_MEGABYTES = 16;
+
+    private String name;
+    private Heuristic heuristic = Heuristic.PIECE_AND_ROW;
+    private boolean incremental = true;
+    private Evaluator weights;
+    private long timeMillis;
+    private long nodes;
+    private int depth;
+    private boolean quiescence = true;
+    private boolean moveOrdering = true;
+    private int aspirationWindow = AI.ASPIRATION_WINDOW;
+    private int hashMegabytes = DEFAULT_HASH_MEGABYTES;
+    private int threads = 1;
+
+    private EngineConfig() {
+    }
+
+    /**
+     * Reads a configuration from its description
+     * @param description comma separated key=value pairs, as described above
+     * @return the configuration
+     * @throws IllegalArgumentException if the description has an unknown key or a value that can't be read
+     */
+    public static EngineConfig parse(String description) {
+        EngineConfig config = new EngineConfig();
+        config.name = description;
+        for (String pair : description.split(",")) {
+            if (pair.trim().isEmpty()) {
+                continue;
+            }
+            int equals = pair.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Expected key=value but found \"" + pair + "\"");
+            }
+            String key = pair.substring(0, equals).trim();
+            String value = pair.substring(equals + 1).trim();
+            try {
+                config.set(key, value);
+            } catch (IllegalArgumentException e) { // includes NumberFormatException
+                throw new IllegalArgumentException("Bad value for " + key + ": \"" + value + "\"", e);
+            }
+        }
+        if (config.timeMillis == 0 && config.depth == 0 && config.nodes == 0) {
+            config.nodes = DEFAULT_NODES;
+        }
+        return config;
+    }
+
+    private void set(String key, String value) {
+        switch (key) {
+            case "name":
+                name = value;
+                break;
+            case "heuristic":
+                heuristic = Heuristic.valueOf(value.toUpperCase());
+                break;
+            case "incremental":
+                incremental = Boolean.parseBoolean(value);
+                break;
+            case "weights":
+                try {
+                    weights = IncrementalEvaluator.load(Paths.get(value));
+                } catch (IOException e) {
+                    throw new IllegalArgumentException(e.getMessage(), e);
+                }
+                break;
+            case "time":
+                timeMillis = Long.parseLong(value);
+                break;
+            case "nodes":
+                nodes = Long.parseLong(value);
+                break;
+            case "depth":
+                depth = Integer.parseInt(value);
+                break;
+            case "quiescence":
+                quiescence = Boolean.parseBoolean(value);
+                break;
+            case "ordering":
+                moveOrdering = Boolean.parseBoolean(value);
+                break;
+            case "aspiration":
+                aspirationWindow = Integer.parseInt(value);
+                break;
+            case "hash":
+                hashMegabytes = Integer.parseInt(value);
+                break;
+            case "threads":
+                threads = Integer.parseInt(value);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown engine option " + key);
+        }
+    }
+
+    /**
+     * @return a new AI set up as configured, with no pause before forced moves
+     */
+    public AI createAI() {
+        AI ai = new AI(hashMegabytes, threads);
+        if (weights != null) {
+            ai.setEvaluator(weights);
+        } else {
+            ai.setEvaluator(incremental ? IncrementalEvaluator.of(heuristic) : heuristic);
+        }
+        ai.setQuiescence(quiescence);
+        ai.setMoveOrdering(moveOrdering);
+        ai.setAspirationWindow(aspirationWindow);
+        ai.setForcedMoveDelay(0);
+        return ai;
+    }
+
+    /**
+     * Has the given AI (created by createAI) choose a move, searching within this configuration's limit. If more than
+     * one limit is given the depth takes precedence, then the time.
+     * @param ai the AI
+     * @param board the current game state
+     * @param moves the valid moves for the given colour
+     * @param colour the colour to move
+     * @return the chosen move
+     */
+    public Move play(AI ai, Board board, ArrayList<Move> moves, char colour) {
+        if (depth > 0) {
+            return ai.playFixedDepth(board, moves, depth, colour);
+        } else if (timeMillis > 0) {
+            return ai.playTimeLimitedMillis(board, timeMillis, moves, colour);
+        }
+        return ai.playNodeLimited(board, nodes, moves, colour);
+    }
+
+    /**
+     * @return the name results are reported under
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
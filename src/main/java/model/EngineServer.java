@@ -0,0 +1,407 @@
+package main.java.model;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the AI as a headless engine process, driven by text commands on standard input and answering on standard
+ * output, a line each, in the style of UCI. Searches run on a background thread, so that commands (isready and stop
+ * in particular) are answered while they go on. Moves and positions are written in PDN notation (see PdnGame).
+ *
+ * Commands:
+ * uci - replies with the engine's name and options, then "uciok"
+ * isready - replies "readyok", straight away even while searching
+ * setoption name [name] value [value] - sets an option: Hash, Threads, Heuristic, Weights, Quiescence, Ordering or
+ *     Aspiration, as described for EngineConfig. Changing options starts a new AI, as ucinewgame does.
+ * ucinewgame - starts a new AI, forgetting everything learnt from the last game
+ * position startpos|fen [fen] [moves [move]...] - sets the position to search from, eg. "position startpos moves
+ *     11-15 23-19"
+ * go [movetime ms] [nodes n] [depth d] [wtime ms] [btime ms] [winc ms] [binc ms] [movestogo n] [infinite] - searches
+ *     the position with the given limit, or until stop if there isn't one. Each iteration is reported on an info line,
+ *     eg. "info depth 9 seldepth 14 score cp 3 nodes 81234 nps 1700000 time 48 pv 11-15", with the score "mate n"
+ *     when the side to move wins in n moves (negative if it loses). The search ends with "bestmove [move]" ("bestmove
+ *     none" if there are no moves).
+ * ponder - once the engine's move has been played (and sent with position), searches on the opponent's time until
+ *     the next go or stop. If the opponent makes the reply the AI expected, a timed go carries on from where
+ *     pondering got to.
+ * stop - stops the search, which then gives its bestmove, or stops pondering
+ * quit - exits
+ *
+ * Errors in commands are reported on "info string" lines, and the command is otherwise ignored.
+ *
+ * @author tp275
+ */
+public final class EngineServer {
+
+    private static final String NAME = "checkers-human-ai";
+    private static final int DEFAULT_MOVES_TO_GO = 30; // moves the remaining time is shared between, if not given
+    private static final long TIME_MARGIN_MILLIS = 50; // kept back from the remaining time for communication
+
+    private final BufferedReader in;
+    private final PrintStream out;
+    private final Map<String, String> options = new LinkedHashMap<>(); // as EngineConfig keys and values
+    private final MoveGenerator moveGenerator = new MoveGenerator();
+    private final ExecutorService searchThread = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "engine search");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private AI ai;
+    private Board board = new Board();
+    private char colour = 'r';
+    private Future<?> search; // the search in progress, or null
+    private long searchToken; // the token to stop it with, taken before it was handed to the search thread
+    // the position being searched, for the info lines to write the best move in
+    private volatile Board searchBoard;
+    private volatile char searchColour;
+
+    /**
+     * @param in where to read commands from
+     * @param out where to write replies to
+     */
+    EngineServer(BufferedReader in, PrintStream out) {
+        this.in = in;
+        this.out = out;
+        this.ai = createAI(EngineConfig.parse(""));
+    }
+
+    public static void main(String[] args) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        new EngineServer(in, System.out).run();
+    }
+
+    /**
+     * Reads and carries out commands until quit, or the end of the input
+     * @throws IOException if the commands can't be read
+     */
+    void run() throws IOException {
+        try {
+            String line;
+            while ((line = in.readLine()) != null && handle(line.trim())) {
+                continue;
+            }
+        } finally {
+            stop();
+            ai.close();
+            searchThread.shutdownNow();
+        }
+    }
+
+    /**
+     * @param line a command
+     * @return false if the command was quit
+     */
+    private boolean handle(String line) {
+        String[] words = line.split("\\s+");
+        try {
+            switch (words[0]) {
+                case "uci":
+                    identify();
+                    break;
+                case "isready":
+                    send("readyok");
+                    break;
+                case "setoption":
+                    stop();
+                    setOption(line);
+                    break;
+                case "ucinewgame":
+                    stop();
+                    ai.close(); // before creating the new AI, so the old one's table can be collected first
+                    ai = createAI(EngineConfig.parse(configDescription()));
+                    break;
+                case "position":
+                    stopSearch();
+                    setPosition(words);
+                    break;
+                case "go":
+                    stopSearch();
+                    go(words);
+                    break;
+                case "ponder":
+                    stopSearch();
+                    ai.ponder(board, colour);
+                    break;
+                case "stop":
+                    stop();
+                    break;
+                case "quit":
+                    return false;
+                case "":
+                    break;
+                default:
+                    send("info string unknown command " + words[0]);
+            }
+        } catch (IllegalArgumentException e) { // includes NumberFormatException
+            send("info string error: " + e.getMessage());
+        }
+        return true;
+    }
+
+    private void identify() {
+        send("id name " + NAME);
+        send("id author tp275");
+        send("option name Hash type spin default 16 min 1 max 4096");
+        send("option name Threads type spin default 1 min 1 max " + Runtime.getRuntime().availableProcessors());
+        StringBuilder heuristics = new StringBuilder();
+        for (Heuristic heuristic : Heuristic.values()) {
+            heuristics.append(" var ").append(heuristic.name());
+        }
+        send("option name Heuristic type combo default " + Heuristic.PIECE_AND_ROW.name() + heuristics);
+        send("option name Weights type string default <empty>");
+        send("option name Quiescence type check default true");
+        send("option name Ordering type check default true");
+        send("option name Aspiration type spin default " + AI.ASPIRATION_WINDOW + " min 0 max " + Searcher.WIN_SCORE);
+        send("uciok");
+    }
+
+    /**
+     * Sets an option and starts a new AI with it, or leaves the options as they were if the value is bad
+     * @param line the setoption command
+     */
+    private void setOption(String line) {
+        int nameStart = line.indexOf(" name ");
+        int valueStart = line.indexOf(" value ");
+        if (nameStart < 0) {
+            throw new IllegalArgumentException("expected setoption name [name] value [value]");
+        }
+        String name = line.substring(nameStart + 6, valueStart < 0 ? line.length() : valueStart).trim().toLowerCase();
+        String value = valueStart < 0 ? "" : line.substring(valueStart + 7).trim();
+        String previous = options.get(name);
+        if (value.isEmpty() || value.equals("<empty>")) {
+            options.remove(name);
+        } else {
+            options.put(name, value);
+        }
+        AI created;
+        try {
+            created = createAI(EngineConfig.parse(configDescription()));
+        } catch (IllegalArgumentException e) {
+            if (previous == null) {
+                options.remove(name);
+            } else {
+                options.put(name, previous);
+            }
+            throw e;
+        }
+        ai.close(); // only once the new configuration is known to be good
+        ai = created;
+    }
+
+    private String configDescription() {
+        StringBuilder description = new StringBuilder();
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            description.append(description.length() > 0 ? "," : "").append(option.getKey()).append('=')
+                       .append(option.getValue());
+        }
+        return description.toString();
+    }
+
+    /**
+     * @param config the configuration to create the AI with
+     * @return a new AI, reporting each of its search iterations on an info line
+     */
+    private AI createAI(EngineConfig config) {
+        AI created = config.createAI();
+        created.addSearchListener(new SearchListener() {
+            @Override
+            public void iterationFinished(SearchStatistics statistics) {
+                send(info(statistics));
+            }
+
+            @Override
+            public void searchFinished(SearchStatistics statistics) {
+                // the bestmove line reports the move
+            }
+        });
+        return created;
+    }
+
+    /**
+     * @param words the position command
+     */
+    private void setPosition(String[] words) {
+        Board position;
+        char positionColour;
+        int index;
+        if (words.length > 1 && words[1].equals("startpos")) {
+            position = new Board();
+            positionColour = 'r';
+            index = 2;
+        } else if (words.length > 2 && words[1].equals("fen")) {
+            position = PdnGame.parseFen(words[2]);
+            positionColour = PdnGame.fenColour(words[2]);
+            index = 3;
+        } else {
+            throw new IllegalArgumentException("expected position startpos|fen [fen] [moves [move]...]");
+        }
+        if (index < words.length && words[index].equals("moves")) {
+            long[] legalMoves = new long[MoveGenerator.MAX_MOVES];
+            for (int i = index + 1; i < words.length; i++) {
+                int count = moveGenerator.generateMoves(position, positionColour, legalMoves);
+                position.makeMove(PdnGame.parseMove(words[i], legalMoves, count));
+                positionColour = positionColour == 'w' ? 'r' : 'w';
+            }
+        }
+        board = new Board(position.getWhite(), position.getRed(), position.getKings());
+        colour = positionColour;
+    }
+
+    /**
+     * Starts searching the current position in the background, with the limit the go command gives
+     * @param words the go command
+     */
+    private void go(String[] words) {
+        long moveTime = 0;
+        long nodes = 0;
+        int depth = 0;
+        long time = 0;
+        long increment = 0;
+        int movesToGo = DEFAULT_MOVES_TO_GO;
+        for (int i = 1; i < words.length; i++) {
+            String parameter = words[i];
+            if (parameter.equals("infinite")) {
+                continue;
+            } else if (i + 1 == words.length) {
+                throw new IllegalArgumentException("no value for " + parameter);
+            }
+            long value = Long.parseLong(words[++i]);
+            switch (parameter) {
+                case "movetime":
+                    moveTime = value;
+                    break;
+                case "nodes":
+                    nodes = value;
+                    break;
+                case "depth":
+                    depth = (int) value;
+                    break;
+                case "wtime":
+                case "btime":
+                    time = parameter.charAt(0) == colour(colour) ? value : time;
+                    break;
+                case "winc":
+                case "binc":
+                    increment = parameter.charAt(0) == colour(colour) ? value : increment;
+                    break;
+                case "movestogo":
+                    movesToGo = (int) Math.max(1, value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown go parameter " + parameter);
+            }
+        }
+        if (moveTime == 0 && time > 0) { // share the remaining time out, keeping some back
+            moveTime = Math.max(1, Math.min(time - TIME_MARGIN_MILLIS, time / movesToGo + increment));
+        }
+
+        Board root = new Board(board);
+        char rootColour = colour;
+        ArrayList<Move> moves = moveGenerator.findValidMoves(root, rootColour);
+        long limitTime = moveTime;
+        long limitNodes = nodes;
+        int limitDepth = depth;
+        searchBoard = root;
+        searchColour = rootColour;
+        searchToken = ai.nextSearchToken();
+        search = searchThread.submit(() -> {
+            String bestMove = "none";
+            try {
+                if (!moves.isEmpty()) {
+                    Move move;
+                    if (limitDepth > 0) {
+                        move = ai.playFixedDepth(new Board(root), moves, limitDepth, rootColour);
+                    } else if (limitTime > 0) {
+                        move = ai.playTimeLimitedMillis(new Board(root), limitTime, moves, rootColour);
+                    } else if (limitNodes > 0) {
+                        move = ai.playNodeLimited(new Board(root), limitNodes, moves, rootColour);
+                    } else {
+                        move = ai.playUntilStopped(new Board(root), moves, rootColour);
+                    }
+                    bestMove = PdnGame.toNotation(PackedMove.fromMove(move), root, rootColour);
+                }
+            } catch (RuntimeException e) {
+                send("info string error: " + e);
+            }
+            send("bestmove " + bestMove);
+        });
+    }
+
+    /**
+     * @return the PDN letter of the given colour: B for red, which moves first, or W for white
+     */
+    private static char colour(char colour) {
+        return colour == 'r' ? 'b' : 'w';
+    }
+
+    /**
+     * @return the info line reporting a finished search iteration
+     */
+    private String info(SearchStatistics statistics) {
+        StringBuilder info = new StringBuilder("info depth ").append(statistics.getDepth());
+        info.append(" seldepth ").append(statistics.getSelectiveDepth());
+        int score = statistics.getScore();
+        if (Math.abs(score) >= Searcher.WIN_THRESHOLD) {
+            int plies = Searcher.WIN_SCORE - Math.abs(score);
+            info.append(" score mate ").append(score > 0 ? (plies + 1) / 2 : -(plies + 1) / 2);
+        } else {
+            info.append(" score cp ").append(score);
+        }
+        info.append(" nodes ").append(statistics.getNodes() + statistics.getQuiescenceNodes());
+        info.append(" nps ").append((long) statistics.getNodesPerSecond());
+        info.append(" time ").append(statistics.getElapsedNanos() / 1000000);
+        Board root = searchBoard;
+        if (statistics.getSource() == SearchStatistics.Source.SEARCH && statistics.getPackedMove() != 0
+                && root != null) { // (pondering searches a position of its own choosing)
+            info.append(" pv ").append(PdnGame.toNotation(statistics.getPackedMove(), root, searchColour));
+        }
+        return info.toString();
+    }
+
+    /**
+     * Stops the search in progress, if there is one, and waits for it to give its best move. Pondering is left going,
+     * so that a go after the opponent's move can pick it up.
+     */
+    private void stopSearch() {
+        if (search == null) {
+            return;
+        }
+        if (!search.isDone()) {
+            ai.stop(searchToken); // (it may not have started yet, so a plain stop could be missed)
+        }
+        try {
+            search.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            send("info string error: " + e.getCause());
+        }
+        search = null;
+        searchBoard = null;
+    }
+
+    /**
+     * Stops the search in progress and any pondering
+     */
+    private void stop() {
+        stopSearch();
+        ai.stopPondering();
+    }
+
+    private void send(String line) {
+        synchronized (out) {
+            out.println(line);
+            out.flush();
+        }
+    }
+}
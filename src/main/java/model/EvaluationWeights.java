@@ -0,0 +1,129 @@
+package main.java.model;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A weight file, as written by Tuner and loaded at startup to evaluate with (see IncrementalEvaluator.load): a value
+ * for a white man and for a white king on every square, from white's point of view. Red's values are white's with the
+ * board turned around, negated, so square s for red is square 31 - s for white.
+ *
+ * The file is text: the line "men" followed by 8 rows of 4 values (square 0 first), then "kings" and its 8 rows.
+ * Blank lines and anything after a '#' are ignored.
+ *
+ * @author tp275
+ */
+public final class EvaluationWeights {
+
+    public static final String DEFAULT_FILE = "weights.txt";
+
+    private EvaluationWeights() {
+    }
+
+    /**
+     * @param men the value of a white man on each square
+     * @param kings the value of a white king on each square
+     * @return the table scoring positions with the given values, from white's point of view
+     */
+    static PieceSquareTable toTable(int[] men, int[] kings) {
+        return new PieceSquareTable((piece, square) -> {
+            switch (piece) {
+                case Zobrist.WHITE_MAN:
+                    return men[square];
+                case Zobrist.WHITE_KING:
+                    return kings[square];
+                case Zobrist.RED_MAN:
+                    return -men[31 - square];
+                default:
+                    return -kings[31 - square];
+            }
+        });
+    }
+
+    /**
+     * Reads a weight file
+     * @param file the file to read
+     * @return the values of a white man (index 0) and a white king (index 1) on each square
+     * @throws IOException if the file can't be read, or isn't a weight file: each of the "men" and "kings" sections
+     * must appear exactly once, with 32 values
+     */
+    static int[][] read(Path file) throws IOException {
+        int[][] weights = new int[2][32];
+        boolean[] seen = new boolean[2];
+        int section = -1;
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comment = line.indexOf('#');
+                line = (comment >= 0 ? line.substring(0, comment) : line).trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (line.equals("men") || line.equals("kings")) {
+                    if (section >= 0 && count != 32) {
+                        throw new IOException(file + ": expected 32 values in each section");
+                    }
+                    section = line.equals("men") ? 0 : 1;
+                    if (seen[section]) {
+                        throw new IOException(file + ": more than one \"" + line + "\" section");
+                    }
+                    seen[section] = true;
+                    count = 0;
+                    continue;
+                }
+                if (section < 0) {
+                    throw new IOException(file + ": expected \"men\" or \"kings\" before the values");
+                }
+                for (String value : line.split("\\s+")) {
+                    if (count == 32) {
+                        throw new IOException(file + ": more than 32 values in a section");
+                    }
+                    try {
+                        weights[section][count++] = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        throw new IOException(file + ": bad value " + value, e);
+                    }
+                }
+            }
+        }
+        if (count != 32) {
+            throw new IOException(file + ": expected 32 values in each section");
+        } else if (!seen[0] || !seen[1]) {
+            throw new IOException(file + ": expected both a \"men\" and a \"kings\" section");
+        }
+        return weights;
+    }
+
+    /**
+     * Writes a weight file, in the format read by read
+     * @param file the file to write
+     * @param men the value of a white man on each square
+     * @param kings the value of a white king on each square
+     * @param comment a line to describe the weights with, at the top of the file
+     * @throws IOException if the file can't be written
+     */
+    static void write(Path file, int[] men, int[] kings, String comment) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("# " + comment + "\n");
+            writer.write("# Values for white, by square from the top-left (white's side); red's are mirrored\n");
+            writeSection(writer, "men", men);
+            writeSection(writer, "kings", kings);
+        }
+    }
+
+    private static void writeSection(BufferedWriter writer, String name, int[] values) throws IOException {
+        writer.write(name + "\n");
+        for (int row = 0; row < 8; row++) {
+            StringBuilder line = new StringBuilder(row % 2 == 0 ? "    " : ""); // indented like the board's squares
+            for (int column = 0; column < 4; column++) {
+                line.append(String.format("%5d   ", values[row * 4 + column]));
+            }
+            writer.write(line.toString().replaceAll("\\s+$", "") + "\n");
+        }
+    }
+}
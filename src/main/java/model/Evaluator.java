@@ -0,0 +1,26 @@
+package main.java.model;
+
+/**
+ * Scores positions for the search at its depth limit. Evaluators are chosen at runtime (see AI.setEvaluator): every
+ * Heuristic is one, scanning the board each time, and IncrementalEvaluator has the board keep its score up to date
+ * as moves are made, so that evaluating is a single lookup.
+ *
+ * @author tp275
+ */
+public interface Evaluator {
+
+    /**
+     * @param board the board state to evaluate
+     * @param colour the colour to evaluate the board for
+     * @return how good the board state is for the given colour
+     */
+    int evaluate(Board board, char colour);
+
+    /**
+     * @return the piece-square table whose score this evaluator wants the board to keep up to date as moves are made
+     * (see Board.setPieceSquareTable), or null if it doesn't use one
+     */
+    default PieceSquareTable getPieceSquareTable() {
+        return null;
+    }
+}
@@ -0,0 +1,314 @@
+package main.java.model;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hosts many human vs AI games at once, each a session with its own position and move history, for a server to
+ * drive. The AI's searches run on a fixed pool of search threads, each with its own AI (and so its own transposition
+ * table), so however many games are going on, the CPU and memory the AI uses are bounded by the pool's size, and each
+ * search is limited by the engine configuration's time, node or depth budget. Searches wait in turn for a thread.
+ *
+ * Requests don't block: a human move is checked and played straight away, and the AI's reply is returned as a future,
+ * completed on a search thread, so the thread handling a request is free as soon as the move is checked. An idle
+ * session holds only its position's masks and its packed moves, a few hundred bytes.
+ *
+ * Games end when the side to move has no moves, or as drawn after NO_PROGRESS_PLIES without a capture or a man moving
+ * (as in Tournament).
+ *
+ * @author tp275
+ */
+public final class GameService implements AutoCloseable {
+
+    private static final int NO_PROGRESS_PLIES = 80;
+
+    private final EngineConfig engine;
+    private final ExecutorService searchPool;
+    private final ThreadLocal<AI> searchAI; // each search thread's AI, created the first time the thread searches
+    private final List<AI> searchAIs = new CopyOnWriteArrayList<>(); // all of them, to close
+    private final Set<CompletableFuture<GameState>> replies = ConcurrentHashMap.newKeySet(); // not yet completed
+    private final Map<Long, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    /**
+     * @param engine the configuration of the AI, including its limit for each move
+     * @param searchThreads the number of searches to run at once
+     */
+    public GameService(EngineConfig engine, int searchThreads) {
+        this.engine = engine;
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "game search " + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.searchPool = Executors.newFixedThreadPool(searchThreads, threadFactory);
+        this.searchAI = ThreadLocal.withInitial(() -> {
+            AI ai = engine.createAI();
+            searchAIs.add(ai);
+            return ai;
+        });
+    }
+
+    /**
+     * Starts a new game from the usual position
+     * @param humanColour the human's colour: 'r' to move first, 'w' to have the AI move first
+     * @return the game's state once it is the human's turn: straight away if the human moves first, otherwise once
+     * the AI has made its first move
+     * @throws IllegalStateException if the service has been closed and the AI would have to move first
+     */
+    public CompletableFuture<GameState> newGame(char humanColour) {
+        if (humanColour != 'r' && humanColour != 'w') {
+            throw new IllegalArgumentException("Unknown colour " + humanColour);
+        }
+        Board board = new Board();
+        Session session = new Session(nextId.getAndIncrement(), board.getWhite(), board.getRed(), humanColour);
+        synchronized (session) {
+            CompletableFuture<GameState> state = humanColour == 'r' ? CompletableFuture.completedFuture(session.state())
+                                                                    : reply(session);
+            sessions.put(session.id, session); // only once the AI's first move is queued, which fails once closed
+            return state;
+        }
+    }
+
+    /**
+     * Plays the human's move, then has the AI reply
+     * @param id the game's session id
+     * @param move the human's move, in PDN notation (see PdnGame.toNotation)
+     * @return the game's state after the AI's reply, or straight after the human's move if that ended the game
+     * @throws IllegalArgumentException if there is no such game or the move isn't legal
+     * @throws IllegalStateException if it isn't the human's turn, the game is over, or the service has been closed
+     */
+    public CompletableFuture<GameState> play(long id, String move) {
+        Session session = session(id);
+        synchronized (session) {
+            if (!session.result.equals(PdnGame.UNKNOWN)) {
+                throw new IllegalStateException("Game " + id + " is over");
+            } else if (session.turn != session.humanColour || session.searching) {
+                throw new IllegalStateException("It isn't the human's turn in game " + id);
+            }
+            long[] legalMoves = new long[MoveGenerator.MAX_MOVES];
+            int count = new MoveGenerator().generateMoves(session.board(), session.turn, legalMoves);
+            session.play(PdnGame.parseMove(move, legalMoves, count));
+            return session.result.equals(PdnGame.UNKNOWN) ? reply(session)
+                                                          : CompletableFuture.completedFuture(session.state());
+        }
+    }
+
+    /**
+     * Queues the AI's move in the given session, which must be the AI's turn
+     * @return the game's state after the AI's move
+     * @throws IllegalStateException if the service has been closed
+     */
+    private CompletableFuture<GameState> reply(Session session) {
+        session.searching = true;
+        Board board = session.board();
+        char colour = session.turn;
+        CompletableFuture<GameState> reply;
+        try {
+            reply = CompletableFuture.supplyAsync(() -> search(session, board, colour), searchPool);
+        } catch (RejectedExecutionException e) {
+            session.searching = false;
+            throw new IllegalStateException("The game service has been closed", e);
+        }
+        replies.add(reply);
+        reply.whenComplete((state, failure) -> {
+            replies.remove(reply);
+            if (failure != null) { // eg. abandoned by close, before the search could reset this itself
+                synchronized (session) {
+                    session.searching = false;
+                }
+            }
+        });
+        if (searchPool.isShutdown()) { // closed since the search was queued, and maybe missed by close
+            reply.cancel(false);
+        }
+        return reply;
+    }
+
+    /**
+     * Has the calling search thread's AI choose its move in the given session, and plays it
+     * @return the game's state after the AI's move
+     */
+    private GameState search(Session session, Board board, char colour) {
+        try {
+            ArrayList<Move> moves = new MoveGenerator().findValidMoves(board, colour);
+            long move = PackedMove.fromMove(engine.play(searchAI.get(), new Board(board), moves, colour));
+            synchronized (session) {
+                session.play(move);
+                return session.state();
+            }
+        } finally {
+            synchronized (session) {
+                session.searching = false;
+            }
+        }
+    }
+
+    /**
+     * @param id a game's session id
+     * @return the game's current state
+     * @throws IllegalArgumentException if there is no such game
+     */
+    public GameState getState(long id) {
+        Session session = session(id);
+        synchronized (session) {
+            return session.state();
+        }
+    }
+
+    /**
+     * @param id a game's session id
+     * @return the game so far, eg. to save with PdnWriter
+     * @throws IllegalArgumentException if there is no such game
+     */
+    public PdnGame getGame(long id) {
+        Session session = session(id);
+        synchronized (session) {
+            Map<String, String> tags = new LinkedHashMap<>();
+            tags.put("Event", "Game " + id);
+            tags.put("Date", session.started.format(DateTimeFormatter.ofPattern("yyyy.MM.dd")));
+            tags.put("Black", session.humanColour == 'r' ? "Human" : "AI");
+            tags.put("White", session.humanColour == 'w' ? "Human" : "AI");
+            return new PdnGame(tags, new Board(), 'r', Arrays.copyOf(session.moves, session.moveCount),
+                               session.result);
+        }
+    }
+
+    /**
+     * Ends a game, forgetting it. A search already going on for it still finishes, but its result is dropped.
+     * @param id the game's session id
+     */
+    public void endGame(long id) {
+        sessions.remove(id);
+    }
+
+    /**
+     * Ends every game that hasn't had a move played for the given time, and isn't waiting for the AI
+     * @param idleMillis how long a game can go without a move
+     * @return the number of games ended
+     */
+    public int endIdleGames(long idleMillis) {
+        long cutoff = System.nanoTime() - idleMillis * 1000000L;
+        int ended = 0;
+        for (Iterator<Session> iterator = sessions.values().iterator(); iterator.hasNext(); ) {
+            Session session = iterator.next();
+            synchronized (session) {
+                if (!session.searching && session.lastMoveNanos - cutoff < 0) {
+                    iterator.remove();
+                    ended++;
+                }
+            }
+        }
+        return ended;
+    }
+
+    /**
+     * @return the number of games going on (or over but not yet ended)
+     */
+    public int getGameCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Stops the search threads and closes their AIs. Searches going on or waiting for a thread are abandoned, and
+     * their futures completed exceptionally with a CancellationException.
+     */
+    @Override
+    public void close() {
+        searchPool.shutdownNow();
+        for (CompletableFuture<GameState> reply : replies) {
+            reply.cancel(false);
+        }
+        for (AI ai : searchAIs) {
+            ai.stop();
+            ai.close();
+        }
+    }
+
+    private Session session(long id) {
+        Session session = sessions.get(id);
+        if (session == null) {
+            throw new IllegalArgumentException("No game " + id);
+        }
+        return session;
+    }
+
+    /**
+     * One game: its position and moves. Guarded by itself.
+     */
+    private static final class Session {
+        final long id;
+        final char humanColour;
+        final LocalDate started = LocalDate.now();
+        int white;
+        int red;
+        int kings;
+        char turn = 'r';
+        long[] moves = new long[16];
+        int moveCount;
+        int pliesWithoutProgress;
+        String lastMove;
+        String result = PdnGame.UNKNOWN;
+        boolean searching; // true while the AI is thinking about its move
+        long lastMoveNanos = System.nanoTime();
+
+        Session(long id, int white, int red, char humanColour) {
+            this.id = id;
+            this.white = white;
+            this.red = red;
+            this.humanColour = humanColour;
+        }
+
+        Board board() {
+            return new Board(white, red, kings);
+        }
+
+        /**
+         * Plays a legal move, and ends the game if the opponent can't move or there has been no progress for too long
+         */
+        void play(long move) {
+            Board board = board();
+            lastMove = PdnGame.toNotation(move, board, turn);
+            boolean manMoved = (kings & (1 << PackedMove.from(move))) == 0;
+            pliesWithoutProgress = PackedMove.isCapture(move) || manMoved ? 0 : pliesWithoutProgress + 1;
+            board.makeMove(move);
+            white = board.getWhite();
+            red = board.getRed();
+            kings = board.getKings();
+            if (moveCount == moves.length) {
+                moves = Arrays.copyOf(moves, moveCount * 2);
+            }
+            moves[moveCount++] = move;
+            turn = turn == 'w' ? 'r' : 'w';
+            lastMoveNanos = System.nanoTime();
+
+            long[] replies = new long[MoveGenerator.MAX_MOVES];
+            if (new MoveGenerator().generateMoves(board, turn, replies) == 0) {
+                result = turn == 'w' ? PdnGame.RED_WIN : PdnGame.WHITE_WIN;
+            } else if (pliesWithoutProgress >= NO_PROGRESS_PLIES) {
+                result = PdnGame.DRAW;
+            }
+        }
+
+        GameState state() {
+            return new GameState(id, white, red, kings, turn, moveCount, lastMove, result);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package main.java.model;
+
+/**
+ * A snapshot of one of a GameService's games, as it stood when a request finished: the position, whose turn it is,
+ * the last move and the result.
+ *
+ * @author tp275
+ */
+public final class GameState {
+
+    private final long id;
+    private final int white;
+    private final int red;
+    private final int kings;
+    private final char turn;
+    private final int moveCount;
+    private final String lastMove;
+    private final String result;
+
+    /**
+     * @param id the game's session id
+     * @param white mask of squares holding white pieces
+     * @param red mask of squares holding red pieces
+     * @param kings mask of squares holding kings
+     * @param turn the colour to move
+     * @param moveCount the number of moves played
+     * @param lastMove the last move played, in PDN notation, or null if there hasn't been one
+     * @param result the result (see PdnGame), PdnGame.UNKNOWN while the game goes on
+     */
+    GameState(long id, int white, int red, int kings, char turn, int moveCount, String lastMove, String result) {
+        this.id = id;
+        this.white = white;
+        this.red = red;
+        this.kings = kings;
+        this.turn = turn;
+        this.moveCount = moveCount;
+        this.lastMove = lastMove;
+        this.result = result;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return a new board holding the position
+     */
+    public Board getBoard() {
+        return new Board(white, red, kings);
+    }
+
+    /**
+     * @return the colour to move
+     */
+    public char getTurn() {
+        return turn;
+    }
+
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * @return the last move played, in PDN notation, or null if there hasn't been one
+     */
+    public String getLastMove() {
+        return lastMove;
+    }
+
+    /**
+     * @return the result: PdnGame.RED_WIN, WHITE_WIN or DRAW, or UNKNOWN while the game goes on
+     */
+    public String getResult() {
+        return result;
+    }
+
+    public boolean isOver() {
+        return !result.equals(PdnGame.UNKNOWN);
+    }
+
+    @Override
+    public String toString() {
+        return "game " + id + " " + turn + ":" + getBoard().toSquareString() + " after " + moveCount + " moves"
+               + (lastMove == null ? "" : " (last " + lastMove + ")") + " result " + result;
+    }
+}
@@ -0,0 +1,164 @@
+package main.java.model;
+
+/**
+ * The heuristics the search can evaluate positions with, so that they can be chosen between (eg. to play them against
+ * each other in a Tournament). Each scores the board from white's point of view by scanning every piece.
+ * IncrementalEvaluator scores the same way without the scan.
+ *
+ * @author tp275
+ */
+public enum Heuristic implements Evaluator {
+
+    PIECES {
+        @Override
+        int score(Board board) {
+            return heuristic(board);
+        }
+    },
+    WEIGHTED {
+        @Override
+        int score(Board board) {
+            return weightedHeuristic(board);
+        }
+    },
+    PIECE_AND_ROW {
+        @Override
+        int score(Board board) {
+            return pieceAndRowHeuristic(board);
+        }
+    },
+    PIECE_AND_ROW_AND_WEIGHTED {
+        @Override
+        int score(Board board) {
+            return pieceAndRowAndWeightedHeuristic(board);
+        }
+    },
+    COMPLEX {
+        @Override
+        int score(Board board) {
+            return complexHeuristic(board, 'w');
+        }
+    };
+
+    /**
+     * @param board the board state to evaluate
+     * @return how good the board state is for white (negative if it is better for red)
+     */
+    abstract int score(Board board);
+
+    /**
+     * @param board the board state to evaluate
+     * @param colour the colour to evaluate the board for
+     * @return how good the board state is for the given colour
+     */
+    @Override
+    public int evaluate(Board board, char colour) {
+        int score = score(board);
+        return colour == 'w' ? score : -score;
+    }
+
+    /**
+     * The heuristic: a measure of how good the given board state is for the given colour.
+     * Currently takes into account whether the player has won and their piece advantage (counting kings as 2)
+     * @param board the board state to evaluate
+     * @return int, as a measure of how good the given board state is for the given colour
+     */
+    private static int heuristic(Board board) {
+        // +2 for pawn, +4 for king
+        int whiteState = (board.getWhitePieces() + board.getWhiteKings()) * 2;
+        int redState = (board.getRedPieces() + board.getRedKings()) * 2;
+
+//        Piece[][] boardArray = board.getBoard();
+//        for (int i = 0; i < 8; i++) {
+//            for (int j = (i + 1) % 2; j < 8; j += 2) {
+//                Piece piece = boardArray[i][j];
+//                if (piece != null && (j == 0 || j == 7)) {
+//                    if (piece.getColour() == 'w') { // +1 for piece on edge of board
+//                        whiteState += 1;
+//                    } else {
+//                        redState += 1;
+//                    }
+//                }
+//            }
+//        }
+
+        return whiteState - redState;
+    }
+
+    private static int weightedHeuristic(Board board) {
+        int redState = 0;
+        int whiteState = 0;
+
+        int kings = board.getKings();
+        for (int pieces = board.getRed(); pieces != 0; pieces &= pieces - 1) {
+            int square = Integer.numberOfTrailingZeros(pieces);
+            redState += ((kings & (1 << square)) != 0) ? (5 * AI.squareWeights[square])
+                                                       : (3 * AI.squareWeights[square]);
+        }
+        for (int pieces = board.getWhite(); pieces != 0; pieces &= pieces - 1) {
+            int square = Integer.numberOfTrailingZeros(pieces);
+            whiteState += ((kings & (1 << square)) != 0) ? (5 * AI.squareWeights[square])
+                                                         : (3 * AI.squareWeights[square]);
+        }
+        return whiteState - redState;
+    }
+
+    private static int pieceAndRowHeuristic(Board board) {
+        int redState = 0;
+        int whiteState = 0;
+
+        int kings = board.getKings();
+        for (int pieces = board.getRed(); pieces != 0; pieces &= pieces - 1) {
+            int square = Integer.numberOfTrailingZeros(pieces);
+            redState += ((kings & (1 << square)) != 0) ? 14 : (5 + (7 - Board.toRow(square)));
+        }
+        for (int pieces = board.getWhite(); pieces != 0; pieces &= pieces - 1) {
+            int square = Integer.numberOfTrailingZeros(pieces);
+            whiteState += ((kings & (1 << square)) != 0) ? 14 : (5 + Board.toRow(square));
+        }
+        return whiteState - redState;
+    }
+
+    private static int pieceAndRowAndWeightedHeuristic(Board board) {
+        int redState = 0;
+        int whiteState = 0;
+
+        int kings = board.getKings();
+        for (int pieces = board.getRed(); pieces != 0; pieces &= pieces - 1) {
+            int square = Integer.numberOfTrailingZeros(pieces);
+            redState += ((kings & (1 << square)) != 0) ? (14 * AI.squareWeights[square])
+                                                        : ((5 + (8 - Board.toRow(square))) * AI.squareWeights[square]);
+        }
+        for (int pieces = board.getWhite(); pieces != 0; pieces &= pieces - 1) {
+            int square = Integer.numberOfTrailingZeros(pieces);
+            whiteState += ((kings & (1 << square)) != 0) ? (14 * AI.squareWeights[square])
+                                                          : ((5 + Board.toRow(square)) * AI.squareWeights[square]);
+        }
+        return whiteState - redState;
+    }
+
+    private static int complexHeuristic(Board board, char color) {
+        double kingFactor = 1.5;
+        double cellFactor = 0.75;
+
+        int redCellWeight = 0;
+        int whiteCellWeight = 0;
+
+        int redKings = board.getRedKings();
+        int whiteKings = board.getWhiteKings();
+
+        int redPieces = board.getRedPieces() - board.getRedKings();
+        int whitePieces = board.getWhitePieces() - board.getWhiteKings();
+
+        for (int pieces = board.getRed(); pieces != 0; pieces &= pieces - 1) {
+            redCellWeight += AI.squareWeights[Integer.numberOfTrailingZeros(pieces)];
+        }
+        for (int pieces = board.getWhite(); pieces != 0; pieces &= pieces - 1) {
+            whiteCellWeight += AI.squareWeights[Integer.numberOfTrailingZeros(pieces)];
+        }
+
+        return (int) ((whitePieces-redPieces) + (kingFactor * (whiteKings-redKings))
+                + (cellFactor * (whiteCellWeight-redCellWeight)) * 1000) + AI.tradeBonus(board);
+
+    }
+}
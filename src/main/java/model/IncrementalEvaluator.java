@@ -0,0 +1,107 @@
+package main.java.model;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Scores positions exactly as a Heuristic does, or with weights tuned by Tuner, but from a piece-square table whose
+ * score the board keeps up to date as moves are made, so evaluating costs a lookup rather than a scan of every piece.
+ * The additive heuristics are nothing but a table. complexHeuristic isn't quite: its table holds twice its piece and
+ * square terms (keeping the king factor of 1.5 whole), which are then halved and added to its trade bonus, which
+ * depends only on piece counts.
+ *
+ * @author tp275
+ */
+public class IncrementalEvaluator implements Evaluator {
+
+    private static final Map<Heuristic, IncrementalEvaluator> EVALUATORS = new EnumMap<>(Heuristic.class);
+
+    static {
+        for (Heuristic heuristic : Heuristic.values()) {
+            if (heuristic == Heuristic.COMPLEX) {
+                EVALUATORS.put(heuristic, complex());
+            } else {
+                EVALUATORS.put(heuristic, new IncrementalEvaluator(heuristic.name(), PieceSquareTable.of(heuristic)));
+            }
+        }
+    }
+
+    private final String name;
+    private final PieceSquareTable table;
+
+    private IncrementalEvaluator(String name, PieceSquareTable table) {
+        this.name = name;
+        this.table = table;
+    }
+
+    /**
+     * @param heuristic the heuristic to score positions as
+     * @return the incremental evaluator giving the same scores as the heuristic. There is one per heuristic, so that
+     * boards kept up to date for one searcher's evaluator are for another's too.
+     */
+    public static IncrementalEvaluator of(Heuristic heuristic) {
+        return EVALUATORS.get(heuristic);
+    }
+
+    /**
+     * Reads an evaluator from a weight file, as written by Tuner
+     * @param file the weight file
+     * @return an evaluator scoring positions with the file's piece-square values
+     * @throws IOException if the file can't be read, or isn't a weight file
+     */
+    public static IncrementalEvaluator load(Path file) throws IOException {
+        int[][] weights = EvaluationWeights.read(file);
+        return new IncrementalEvaluator(file.getFileName().toString(), EvaluationWeights.toTable(weights[0],
+                                                                                                weights[1]));
+    }
+
+    private static IncrementalEvaluator complex() {
+        PieceSquareTable table = new PieceSquareTable((piece, square) -> {
+            int sign = piece == Zobrist.WHITE_MAN || piece == Zobrist.WHITE_KING ? 1 : -1;
+            int pieceValue = piece == Zobrist.WHITE_KING || piece == Zobrist.RED_KING ? 3 : 2; // kings are 1.5 men
+            return sign * (pieceValue + 1500 * AI.squareWeights[square]); // twice the cell factor of 0.75 * 1000
+        });
+        return new IncrementalEvaluator(Heuristic.COMPLEX.name(), table) {
+            @Override
+            int score(Board board, int tableScore) {
+                return tableScore / 2 + AI.tradeBonus(board); // (int) of the halved terms truncates the same way
+            }
+        };
+    }
+
+    /**
+     * @param board the board state to evaluate
+     * @param colour the colour to evaluate the board for
+     * @return how good the board state is for the given colour, taken from the board's kept score if it keeps this
+     * evaluator's table, or worked out in full otherwise
+     */
+    @Override
+    public int evaluate(Board board, char colour) {
+        int tableScore = board.getPieceSquareTable() == table ? board.getPieceSquareScore()
+                                                              : table.score(board.getWhite(), board.getRed(),
+                                                                            board.getKings());
+        int score = score(board, tableScore);
+        return colour == 'w' ? score : -score;
+    }
+
+    /**
+     * @param board the board state to evaluate
+     * @param tableScore the table's score of the board
+     * @return the board's score, from white's point of view
+     */
+    int score(Board board, int tableScore) {
+        return tableScore;
+    }
+
+    @Override
+    public PieceSquareTable getPieceSquareTable() {
+        return table;
+    }
+
+    @Override
+    public String toString() {
+        return "incremental " + name;
+    }
+}
@@ -11,12 +11,39 @@ import java.util.ArrayList;
  */
 public class MoveGenerator {
 
-    private final MoveValidator check = new MoveValidator();
+    /** The most moves any position can have, and so the length move arrays passed to generateMoves need */
+    public static final int MAX_MOVES = 128;
+
+    // Directions, in the order moves are generated: white men move down the board and red men up it
+    static final int DOWN_LEFT = 0;
+    static final int DOWN_RIGHT = 1;
+    static final int UP_LEFT = 2;
+    static final int UP_RIGHT = 3;
+
+    /** NEIGHBOURS[square][direction] is the square diagonally next to the given one, or -1 if that's off the board */
+    static final int[][] NEIGHBOURS = new int[32][4];
+    /** JUMPS[square][direction] is the square two diagonal steps from the given one, or -1 if that's off the board */
+    static final int[][] JUMPS = new int[32][4];
+
+    static {
+        int[] rowSteps = {1, 1, -1, -1};
+        int[] colSteps = {-1, 1, -1, 1};
+        for (int square = 0; square < 32; square++) {
+            int row = Board.toRow(square);
+            int col = Board.toColumn(square);
+            for (int direction = 0; direction < 4; direction++) {
+                NEIGHBOURS[square][direction] = Board.toSquare(row + rowSteps[direction], col + colSteps[direction]);
+                JUMPS[square][direction] = Board.toSquare(row + 2 * rowSteps[direction], col + 2 * colSteps[direction]);
+            }
+        }
+    }
 
     /**
      * Populates and returns an ArrayList with valid moves for all pieces of the given colour (note that if there
      * is one or more jump move they will be the only ones returned, as they have have to be made as per the rules)
      *
+     * Jumps are single hops here, for the human to make one at a time; see generateMoves for complete moves.
+     *
      * @param board  the board state to find valid moves on
      * @param colour the player to find valid moves for
      * @return ArrayList of all valid Moves for all pieces of the given colour which are on the given Board
@@ -24,26 +51,165 @@ public class MoveGenerator {
     public ArrayList<Move> findValidMoves(Board board, char colour) {
         ArrayList<Move> validMoves = new ArrayList<>(getValidJumps(board, colour)); // first find valid jumps
         if (validMoves.size() > 0) { // if there is a jump, it has to be made!
-            updateKings(validMoves, colour);
+            updateKings(board, validMoves, colour);
             return validMoves;
         }
         validMoves.addAll(getValidSlides(board, colour)); // otherwise, now find valid slide moves
-        updateKings(validMoves, colour);
+        updateKings(board, validMoves, colour);
         return validMoves;
     }
 
+    /**
+     * Populates and returns an ArrayList with every complete valid move for the given colour, as generateMoves but as
+     * Move objects: each multi-jump is one Move, with its hops as the Move's previous moves
+     *
+     * @param board  the board state to find valid moves on
+     * @param colour the player to find valid moves for
+     * @return ArrayList of all complete valid Moves for the given colour
+     */
+    public ArrayList<Move> findCompleteMoves(Board board, char colour) {
+        long[] moves = new long[MAX_MOVES];
+        int count = generateMoves(board, colour, moves);
+        ArrayList<Move> completeMoves = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            completeMoves.add(PackedMove.toMove(moves[i], board));
+        }
+        return completeMoves;
+    }
+
+    /**
+     * Writes every complete valid move for the given colour into the given array, packed as described in PackedMove.
+     * If any jump is available only jumps are generated, and each multi-jump is generated as a single move. A man that
+     * reaches the far row is crowned and its turn ends there, even if it could jump on as a king. Nothing is
+     * allocated, so this is what the search uses.
+     *
+     * @param board  the board state to find valid moves on
+     * @param colour the player to find valid moves for
+     * @param moves  array to write the moves into, at least MAX_MOVES long
+     * @return the number of moves written
+     */
+    public int generateMoves(Board board, char colour, long[] moves) {
+        int count = generateCaptures(board, colour, moves);
+        if (count > 0) { // if there is a jump, it has to be made!
+            return count;
+        }
+        return generateSlides(board, colour, moves);
+    }
+
+    private int generateSlides(Board board, char colour, long[] moves) {
+        int empty = board.getEmpty();
+        int kings = board.getKings();
+        int firstManDirection = colour == 'w' ? DOWN_LEFT : UP_LEFT;
+        int kingRow = colour == 'w' ? 7 : 0;
+        int count = 0;
+        for (int pieces = board.getPieces(colour); pieces != 0; pieces &= pieces - 1) {
+            int square = Integer.numberOfTrailingZeros(pieces);
+            boolean king = (kings & (1 << square)) != 0;
+            int firstDirection = king ? 0 : firstManDirection;
+            int lastDirection = king ? 3 : firstManDirection + 1;
+            for (int direction = firstDirection; direction <= lastDirection; direction++) {
+                int to = NEIGHBOURS[square][direction];
+                if (to >= 0 && (empty & (1 << to)) != 0) {
+                    moves[count++] = PackedMove.encode(square, to, 0, !king && Board.toRow(to) == kingRow);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Writes only the complete jump moves for the given colour into the given array, as generateMoves does when a jump
+     * is available, eg. for a search that only looks at captures
+     *
+     * @param board  the board state to find jumps on
+     * @param colour the player to find jumps for
+     * @param moves  array to write the moves into, at least MAX_MOVES long
+     * @return the number of moves written, 0 if there are no jumps
+     */
+    public int generateCaptures(Board board, char colour, long[] moves) {
+        int opponents = board.getPieces(colour == 'w' ? 'r' : 'w');
+        int kings = board.getKings();
+        int count = 0;
+        for (int pieces = board.getPieces(colour); pieces != 0; pieces &= pieces - 1) {
+            int square = Integer.numberOfTrailingZeros(pieces);
+            int empty = board.getEmpty() | (1 << square); // the jumping piece has left its square
+            count = generateJumpsFrom(square, square, (kings & (1 << square)) != 0, 0, opponents, empty, colour,
+                                      moves, count);
+        }
+        return count;
+    }
+
+    /**
+     * Depth first search of every jump sequence the piece can continue with from the given square, on the one set of
+     * masks, adding a move for each sequence that can't be continued any further
+     *
+     * @param origin    the square the piece started the move on
+     * @param square    the square the piece has got to
+     * @param king      whether the piece is a king
+     * @param captured  mask of the squares jumped so far
+     * @param opponents mask of the opponent's pieces (captured pieces stay on the board until the move is finished)
+     * @param empty     mask of the squares that can be landed on
+     * @param colour    the colour of the jumping piece
+     * @param moves     array to write the moves into
+     * @param count     the number of moves in the array so far
+     * @return the number of moves in the array now
+     */
+    private int generateJumpsFrom(int origin, int square, boolean king, int captured, int opponents, int empty,
+                                  char colour, long[] moves, int count) {
+        int firstDirection = king ? 0 : (colour == 'w' ? DOWN_LEFT : UP_LEFT);
+        int lastDirection = king ? 3 : firstDirection + 1;
+        int kingRow = colour == 'w' ? 7 : 0;
+        boolean continued = false;
+        for (int direction = firstDirection; direction <= lastDirection; direction++) {
+            int over = NEIGHBOURS[square][direction];
+            int landing = JUMPS[square][direction];
+            if (landing >= 0 && (opponents & ~captured & (1 << over)) != 0 && (empty & (1 << landing)) != 0) {
+                continued = true;
+                if (!king && Board.toRow(landing) == kingRow) { // crowned, which ends the turn
+                    count = addJump(PackedMove.encode(origin, landing, captured | (1 << over), true), moves, count);
+                } else {
+                    count = generateJumpsFrom(origin, landing, king, captured | (1 << over), opponents, empty, colour,
+                                              moves, count);
+                }
+            }
+        }
+        if (!continued && captured != 0) {
+            count = addJump(PackedMove.encode(origin, square, captured, false), moves, count);
+        }
+        return count;
+    }
+
+    /**
+     * Adds a finished jump sequence to the moves, unless the same move is already there
+     * @param move  the packed jump
+     * @param moves array to write the move into
+     * @param count the number of moves in the array so far
+     * @return the number of moves in the array now
+     */
+    private static int addJump(long move, long[] moves, int count) {
+        int origin = PackedMove.from(move);
+        for (int i = count - 1; i >= 0 && PackedMove.from(moves[i]) == origin; i--) {
+            if (moves[i] == move) {
+                return count; // a king can go round a loop either way and capture the same pieces
+            }
+        }
+        moves[count] = move;
+        return count + 1;
+    }
+
     /**
      * Kings are generated here using valid move lists and a given colour, and setting 'kingPiece' in
-     * the Moves, which can later be updated. This is more optimised than checking the board itself!
+     * the Moves of men that reach the far row, which can later be updated
      *
+     * @param board      the board state the moves are made from
      * @param validMoves a list of moves to check and update
      * @param colour     the colour of the pieces in the moves
      */
-    private void updateKings(ArrayList<Move> validMoves, char colour) {
+    private void updateKings(Board board, ArrayList<Move> validMoves, char colour) {
+        int kingRow = colour == 'w' ? 7 : 0;
         for (Move m : validMoves) {
-            if (m.destination.x == 0 && colour == 'r') {
-                m.setKingPiece();
-            } else if (m.destination.x == 7 && colour == 'w') {
+            int origin = Board.toSquare(m.origin.x, m.origin.y);
+            if (m.destination.x == kingRow && (board.getKings() & (1 << origin)) == 0) {
                 m.setKingPiece();
             }
         }
@@ -58,35 +224,16 @@ public class MoveGenerator {
      */
     private ArrayList<Move> getValidSlides(Board board, char colour) {
         ArrayList<Move> validSlides = new ArrayList<>();
-        for (int i = 0; i < 8; i++) {
-            for (int j = (i + 1) % 2; j < 8; j += 2) { // for all board positions
-                if (board.getPiece(i, j) != null) { // if there is a piece
-                    Piece piece = board.getPiece(i, j);
-                    Point origin = new Point(i, j);
-
-                    // go through downwards diagonal moves for white or kings
-                    if ((colour == 'w' && piece.getColour() == colour)
-                            || (piece.isKing() && piece.getColour() == colour)) {
-                        Point downLeft = new Point(i + 1, j - 1);
-                        if (check.isSlideValid(board, downLeft)) {
-                            validSlides.add(new Move(origin, downLeft));
-                        }
-                        Point downRight = new Point(i + 1, j + 1);
-                        if (check.isSlideValid(board, downRight)) {
-                            validSlides.add(new Move(origin, downRight));
-                        }
-                    }
-                    // go through upwards diagonal moves for red or kings
-                    if ((colour == 'r' && piece.getColour() == colour)
-                            || (piece.isKing() && piece.getColour() == colour)) {
-                        Point upLeft = new Point(i - 1, j - 1);
-                        if (check.isSlideValid(board, upLeft)) {
-                            validSlides.add(new Move(origin, upLeft));
-                        }
-                        Point upRight = new Point(i - 1, j + 1);
-                        if (check.isSlideValid(board, upRight)) {
-                            validSlides.add(new Move(origin, upRight));
-                        }
+        int empty = board.getEmpty();
+        for (int pieces = board.getPieces(colour); pieces != 0; pieces &= pieces - 1) { // for all pieces of the colour
+            int square = Integer.numberOfTrailingZeros(pieces);
+            boolean king = (board.getKings() & (1 << square)) != 0;
+            // downwards diagonal moves for white or kings, then upwards diagonal moves for red or kings
+            for (int direction = 0; direction < 4; direction++) {
+                if (king || (direction < UP_LEFT) == (colour == 'w')) {
+                    int to = NEIGHBOURS[square][direction];
+                    if (to >= 0 && (empty & (1 << to)) != 0) {
+                        validSlides.add(new Move(toPoint(square), toPoint(to)));
                     }
                 }
             }
@@ -103,39 +250,18 @@ public class MoveGenerator {
      */
     private ArrayList<Move> getValidJumps(Board board, char colour) {
         ArrayList<Move> validJumps = new ArrayList<>();
-        for (int i = 0; i < 8; i++) {
-            for (int j = (i + 1) % 2; j < 8; j += 2) { // for all board positions
-                if (board.getPiece(i, j) != null) { // if there is a piece
-                    Piece piece = board.getPiece(i, j);
-                    Point origin = new Point(i, j);
-
-                    // go through downwards diagonal jumps for white or kings
-                    if ((colour == 'w' && piece.getColour() == colour)
-                            || (piece.isKing() && piece.getColour() == colour)) {
-                        Point downLeft = new Point(i + 1, j - 1);
-                        Point down2Left2 = new Point(i + 2, j - 2);
-                        if (check.isJumpValid(board, downLeft, down2Left2, colour)) {
-                            validJumps.add(new Move(origin, down2Left2, downLeft));
-                        }
-                        Point downRight = new Point(i + 1, j + 1);
-                        Point down2Right2 = new Point(i + 2, j + 2);
-                        if (check.isJumpValid(board, downRight, down2Right2, colour)) {
-                            validJumps.add(new Move(origin, down2Right2, downRight));
-                        }
-                    }
-                    // go through upwards diagonal jumps for red or kings
-                    if ((colour == 'r' && piece.getColour() == colour)
-                            || (piece.isKing() && piece.getColour() == colour)) {
-                        Point upLeft = new Point(i - 1, j - 1);
-                        Point up2Left2 = new Point(i - 2, j - 2);
-                        if (check.isJumpValid(board, upLeft, up2Left2, colour)) {
-                            validJumps.add(new Move(origin, up2Left2, upLeft));
-                        }
-                        Point upRight = new Point(i - 1, j + 1);
-                        Point up2Right2 = new Point(i - 2, j + 2);
-                        if (check.isJumpValid(board, upRight, up2Right2, colour)) {
-                            validJumps.add(new Move(origin, up2Right2, upRight));
-                        }
+        int empty = board.getEmpty();
+        int opponents = board.getPieces(colour == 'w' ? 'r' : 'w');
+        for (int pieces = board.getPieces(colour); pieces != 0; pieces &= pieces - 1) { // for all pieces of the colour
+            int square = Integer.numberOfTrailingZeros(pieces);
+            boolean king = (board.getKings() & (1 << square)) != 0;
+            // downwards diagonal jumps for white or kings, then upwards diagonal jumps for red or kings
+            for (int direction = 0; direction < 4; direction++) {
+                if (king || (direction < UP_LEFT) == (colour == 'w')) {
+                    int over = NEIGHBOURS[square][direction];
+                    int to = JUMPS[square][direction];
+                    if (to >= 0 && (opponents & (1 << over)) != 0 && (empty & (1 << to)) != 0) {
+                        validJumps.add(new Move(toPoint(square), toPoint(to), toPoint(over)));
                     }
                 }
             }
@@ -143,86 +269,32 @@ public class MoveGenerator {
         return validJumps;
     }
 
+    private static Point toPoint(int square) {
+        return new Point(Board.toRow(square), Board.toColumn(square));
+    }
+
     /**
-     * Determines if the given player can make another jump in their turn (as per the multi-step rules)
+     * Determines if the given player can make another jump in their turn (as per the multi-step rules). A man that
+     * was crowned by its last jump can't, as being crowned ends the turn.
      *
-     * @param board       the board state after the last move
-     * @param color       the colour of the pieces to check
-     * @param destination the current location of the piece to check (ie. the destination of the previous move)
-     * @return true if there is another jump available for the piece in the player's previous move, else false
+     * @param board        the board state after the last move
+     * @param color        the colour of the pieces to check
+     * @param previousMove the jump just made (ie. the piece to check is at its destination)
+     * @return the jumps available to the piece in the player's previous move, if any
      */
-    public ArrayList<Move> detectMultiMove(Board board, char color, Point destination) {
-        ArrayList<Move> validJumps = getValidJumps(board, color);
-        if (validJumps.size() > 0) { // if there are valid jumps on the board for the player
-            // Remove all jumps that don't start at the destination of the last move
-            validJumps.removeIf(e -> (e.getOrigin().x != destination.x || e.getOrigin().y != destination.y));
-            if (validJumps.size() > 0) {
-                return validJumps;
-            } // and return true if there is still an available jump
-        }
-        return validJumps;
-    }
-
-    public ArrayList<Move> updateValidMovesWithJumps(Board board, ArrayList<Move> children, char color) {
-        ArrayList<Move> movesToAdd = new ArrayList<>();
-
-        for (Move move : children) {
-            if (move.hasPieceToRemove()) { // for each jump move in the original list of child moves
-                ArrayList<Move> validJumps = getValidJumpsFromMove(board, color, move, move.kingPiece);
-                if (validJumps.size() > 0) { // if there is another jump move
-
-                    ArrayList<Move> previousMoves = new ArrayList<>();
-                    previousMoves.add(move);
-                    testUpdateLoop(board, color, move, previousMoves, validJumps, movesToAdd);
-
-                } else if (!movesToAdd.contains(move)) { // if a jump move in the original list didn't have any more jumps
-                    movesToAdd.add(move);
-                }
-            } else if (!movesToAdd.contains(move)) { // if a move in the original list wasn't a jump
-                movesToAdd.add(move);
-            }
-        }
-        updateKings(movesToAdd, color);
-        return movesToAdd;
-    }
-
-    private void testUpdateLoop(Board board, char color, Move originalMove, ArrayList<Move> previousMoves, ArrayList<Move> validJumps, ArrayList<Move> movesToAdd) {
-        for (Move furtherJump : validJumps) {
-            if (originalMove.hasPieceToRemove()) {
-                ArrayList<Move> validFurtherJumps = getValidJumpsFromMove(board, color, previousMoves, furtherJump);
-                if (validFurtherJumps.size() > 0) {
-                    previousMoves.add(furtherJump);
-                    testUpdateLoop(board, color, originalMove, previousMoves, validFurtherJumps, movesToAdd);
-                } else if (!movesToAdd.contains(furtherJump)) { // if a further jump move didn't have any more jumps
-                    movesToAdd.add(new Move(previousMoves, furtherJump));
-                }
-            } else if (!movesToAdd.contains(furtherJump)) { // if a further jump move didn't have any more jumps
-                movesToAdd.add(new Move(previousMoves, furtherJump));
-            }
+    public ArrayList<Move> detectMultiMove(Board board, char color, Move previousMove) {
+        ArrayList<Move> validJumps = new ArrayList<>();
+        if (previousMove.kingPiece) { // crowned, so the turn is over
+            return validJumps;
         }
-    }
-
-    private ArrayList<Move> getValidJumpsFromMove(Board board, char color, Move move, boolean king) {
-        ArrayList<Move> validJumps = getValidJumps(board.updateLocation(move), color); // get jump from that move's resulting location
-        validJumps.removeIf(e -> (e.getOrigin().x != move.destination.x || e.getOrigin().y != move.destination.y));
-        if (king) {
-            for (Move m : validJumps) {
-                m.setKingPiece();
+        Point destination = previousMove.getDestination();
+        for (Move jump : getValidJumps(board, color)) {
+            // only jumps that start at the destination of the last move
+            if (jump.getOrigin().x == destination.x && jump.getOrigin().y == destination.y) {
+                validJumps.add(jump);
             }
         }
+        updateKings(board, validJumps, color);
         return validJumps;
     }
-
-    private ArrayList<Move> getValidJumpsFromMove(Board board, char color, ArrayList<Move> previousMoves, Move move) {
-        Board updatedBoard = new Board(board.getBoard());
-        boolean previousMoveKing = false;
-        for (Move previousMove : previousMoves) {
-            if (move.kingPiece) {
-                previousMoveKing = true;
-                previousMove.setKingPiece();
-            }
-            updatedBoard = updatedBoard.updateLocation(previousMove);
-        }
-        return getValidJumpsFromMove(updatedBoard, color, move, previousMoveKing);
-    }
 }
@@ -0,0 +1,140 @@
+package main.java.model;
+
+import java.util.Arrays;
+
+/**
+ * Sorts a node's moves so that the ones most likely to cause a cutoff are searched first, which lets alpha-beta prune
+ * far more of the tree. Moves are ordered:
+ *  1. the transposition table's best move (the best move found by the previous, shallower iteration)
+ *  2. captures, most material gained first
+ *  3. the killer moves for the ply: quiet moves that recently caused a cutoff in a sibling position
+ *  4. everything else, by history score: how often and how deep a move with the same origin and destination has caused
+ *     a cutoff anywhere in the tree
+ *
+ * Each searcher has its own MoveOrderer, as the killer and history tables are updated as it searches.
+ *
+ * @author tp275
+ */
+class MoveOrderer {
+
+    static final int MAX_PLY = 128;
+
+    private static final int TABLE_MOVE_SCORE = 1 << 30;
+    private static final int CAPTURE_SCORE = 1 << 28;
+    private static final int KILLER_SCORE = 1 << 26;
+    private static final int HISTORY_LIMIT = KILLER_SCORE - 1;
+
+    private final int[][] killers = new int[MAX_PLY][2];
+    private final int[][] history = new int[32][32];
+    private int[] scores = new int[32];
+
+    MoveOrderer() {
+        clear();
+    }
+
+    /**
+     * Forgets all killer moves and history scores, eg. before searching a new position
+     */
+    void clear() {
+        for (int[] plyKillers : killers) {
+            Arrays.fill(plyKillers, -1);
+        }
+        for (int[] fromHistory : history) {
+            Arrays.fill(fromHistory, 0);
+        }
+    }
+
+    /**
+     * Forgets the killer moves, which belong to the plies of the last search, and halves the history scores, so that
+     * they still order the next search of the same game but are soon outweighed by its own cutoffs
+     */
+    void age() {
+        for (int[] plyKillers : killers) {
+            Arrays.fill(plyKillers, -1);
+        }
+        for (int[] fromHistory : history) {
+            for (int i = 0; i < fromHistory.length; i++) {
+                fromHistory[i] >>= 1;
+            }
+        }
+    }
+
+    /**
+     * Sorts the given moves into the order they should be searched in
+     * @param moves the packed moves to sort, in place
+     * @param count the number of moves in the array
+     * @param board the position the moves are made from
+     * @param tableMove the transposition table's best move for the position (as made by TranspositionTable.packMove),
+     *                  or -1
+     * @param ply the number of moves made since the root of the search
+     */
+    void order(long[] moves, int count, Board board, int tableMove, int ply) {
+        if (scores.length < count) {
+            scores = new int[count * 2];
+        }
+        for (int i = 0; i < count; i++) {
+            scores[i] = score(moves[i], board, tableMove, ply);
+        }
+        // insertion sort, as move lists are short and often nearly in order already
+        for (int i = 1; i < count; i++) {
+            long move = moves[i];
+            int score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < score) {
+                moves[j + 1] = moves[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            moves[j + 1] = move;
+            scores[j + 1] = score;
+        }
+    }
+
+    private int score(long move, Board board, int tableMove, int ply) {
+        int packed = PackedMove.fromTo(move);
+        if (packed == tableMove) {
+            return TABLE_MOVE_SCORE;
+        }
+        int captured = PackedMove.captured(move);
+        if (captured != 0) {
+            // men are worth 2 and kings 3, so that taking kings is preferred
+            return CAPTURE_SCORE + 2 * Integer.bitCount(captured) + Integer.bitCount(captured & board.getKings());
+        }
+        if (ply < MAX_PLY) {
+            if (killers[ply][0] == packed) {
+                return KILLER_SCORE + 1;
+            }
+            if (killers[ply][1] == packed) {
+                return KILLER_SCORE;
+            }
+        }
+        return history[PackedMove.from(move)][PackedMove.to(move)];
+    }
+
+    /**
+     * Records that the given move caused a beta cutoff, updating the killer moves and history table if it was quiet
+     * @param move the packed move that caused the cutoff
+     * @param depth the remaining depth the move was searched to
+     * @param ply the number of moves made since the root of the search
+     */
+    void recordCutoff(long move, int depth, int ply) {
+        if (PackedMove.isCapture(move)) {
+            return; // captures are already searched early, and are forced anyway
+        }
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        int packed = PackedMove.fromTo(move);
+        if (ply < MAX_PLY && killers[ply][0] != packed) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = packed;
+        }
+        history[from][to] += depth * depth;
+        if (history[from][to] > HISTORY_LIMIT) { // keep history below the killers by halving everything
+            for (int[] fromHistory : history) {
+                for (int i = 0; i < fromHistory.length; i++) {
+                    fromHistory[i] >>= 1;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package main.java.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A book of opening moves, built offline by OpeningBookBuilder, so the first moves of a game don't need searching.
+ *
+ * The book file is a header (MAGIC, then the number of entries) followed by 12 byte entries sorted by key: the
+ * position's Zobrist hash including the side to move (8 bytes), a move's origin and destination as made by
+ * TranspositionTable.packMove (2 bytes), and the move's weight (2 bytes). A position with several good moves has an
+ * entry for each. Zobrist keys come from a fixed seed, so they are the same in every run.
+ *
+ * @author tp275
+ */
+public class OpeningBook {
+
+    public static final String DEFAULT_FILE = "book.bin";
+    static final int MAGIC = 0x43424B31; // "CBK1"
+
+    private final long[] keys;
+    private final short[] moves;
+    private final short[] weights;
+
+    /**
+     * @param keys the entries' position keys, sorted
+     * @param moves the entries' moves, as made by TranspositionTable.packMove
+     * @param weights the entries' weights
+     */
+    OpeningBook(long[] keys, short[] moves, short[] weights) {
+        this.keys = keys;
+        this.moves = moves;
+        this.weights = weights;
+    }
+
+    /**
+     * Reads the given book file
+     * @param file the book file
+     * @return the book
+     * @throws IOException if the file can't be read, or isn't a book
+     */
+    public static OpeningBook open(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not an opening book");
+            }
+            int size = in.readInt();
+            long[] keys = new long[size];
+            short[] moves = new short[size];
+            short[] weights = new short[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = in.readLong();
+                moves[i] = in.readShort();
+                weights[i] = in.readShort();
+            }
+            return new OpeningBook(keys, moves, weights);
+        }
+    }
+
+    /**
+     * Writes this book to the given file, in the format read by open
+     * @param file the file to write
+     * @throws IOException if the file can't be written
+     */
+    void write(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                out.writeLong(keys[i]);
+                out.writeShort(moves[i]);
+                out.writeShort(weights[i]);
+            }
+        }
+    }
+
+    /**
+     * @param board the position
+     * @param colour the colour to move
+     * @return the key the position is stored under
+     */
+    static long key(Board board, char colour) {
+        return board.getHash() ^ Zobrist.sideToMove(colour);
+    }
+
+    /**
+     * Looks up a move to play in the given position
+     * @param board the position
+     * @param colour the colour to move
+     * @param random source of randomness to choose between the position's moves in proportion to their weights, or
+     *               null to always choose the most heavily weighted
+     * @return the chosen move, as made by TranspositionTable.packMove, or -1 if the position isn't in the book
+     */
+    public int probe(Board board, char colour, Random random) {
+        long key = key(board, colour);
+        int first = Arrays.binarySearch(keys, key);
+        if (first < 0) {
+            return -1;
+        }
+        while (first > 0 && keys[first - 1] == key) { // binary search finds any of the position's entries
+            first--;
+        }
+        int end = first;
+        int totalWeight = 0;
+        while (end < keys.length && keys[end] == key) {
+            totalWeight += weights[end++];
+        }
+        int chosen = first;
+        if (random != null) {
+            int pick = random.nextInt(totalWeight);
+            while (pick >= weights[chosen]) {
+                pick -= weights[chosen++];
+            }
+        } else {
+            for (int i = first + 1; i < end; i++) {
+                if (weights[i] > weights[chosen]) {
+                    chosen = i;
+                }
+            }
+        }
+        return moves[chosen];
+    }
+
+    /**
+     * @return the number of moves in the book
+     */
+    public int size() {
+        return keys.length;
+    }
+}
@@ -0,0 +1,176 @@
+package main.java.model;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the opening book read by OpeningBook, by searching every position in the first few moves of the game deeply.
+ * Run offline, eg. "OpeningBookBuilder book.bin 8 12 25" to search 8 plies of openings, each position to depth 12,
+ * keeping moves within 25% of a man of the best.
+ *
+ * Every root move of a position is given an exact score, and all moves scoring within the margin of the best go in the
+ * book, weighted towards the best, so that the AI can vary its openings without playing a worse move. The margin is
+ * given as a percentage of a man, and turned into the evaluator's units by measuring what a man is worth to it. The
+ * book follows each of those moves, for both sides, until the given number of plies. A position reached by more than
+ * one move order is searched once, but followed again if it is reached with more plies left to cover.
+ *
+ * @author tp275
+ */
+public final class OpeningBookBuilder {
+
+    private static final int DEFAULT_PLIES = 6;
+    private static final int DEFAULT_DEPTH = 10;
+    private static final int DEFAULT_MARGIN_PERCENT = 20; // of a man, which is 1 for the default evaluator
+
+    private final Evaluator evaluator = IncrementalEvaluator.of(Heuristic.PIECE_AND_ROW);
+    private final Searcher searcher = new Searcher(new TranspositionTable(TranspositionTable.DEFAULT_SIZE_MEGABYTES));
+    private final MoveGenerator moveGenerator = new MoveGenerator();
+    private final int depth;
+    private final int margin; // moves scoring up to this much less than the best go in the book too
+    private final List<long[]> entries = new ArrayList<>(); // {key, move, weight}
+    private final Map<Long, Integer> visited = new HashMap<>(); // the most plies each position was covered for
+    private final Map<Long, long[]> bookMoves = new HashMap<>(); // the moves each position has in the book
+
+    /**
+     * @param depth the depth to search each position to
+     * @param marginPercent how far behind the best move other moves can score and still go in the book, as a
+     *                      percentage of a man
+     * @throws IllegalArgumentException if the margin is negative, or too big for the book's weights (which are
+     * shorts, the best move's being the margin + 1)
+     */
+    private OpeningBookBuilder(int depth, int marginPercent) {
+        long margin = (long) manValue(evaluator) * marginPercent / 100;
+        if (margin < 0 || margin + 1 > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("A margin of " + marginPercent + "% of a man is " + margin
+                                               + " in the evaluator's units, outside 0 to " + (Short.MAX_VALUE - 1));
+        }
+        this.depth = depth;
+        this.margin = (int) margin;
+        searcher.setEvaluator(evaluator);
+    }
+
+    /**
+     * @param args the book file to write (default OpeningBook.DEFAULT_FILE), the number of plies of openings to
+     *             cover (default 6), the depth to search each position to (default 10) and how far behind the best
+     *             move other moves can score and still go in the book, as a percentage of a man (default 20)
+     * @throws IOException if the book can't be written
+     */
+    public static void main(String[] args) throws IOException {
+        String file = args.length > 0 ? args[0] : OpeningBook.DEFAULT_FILE;
+        int plies = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PLIES;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_DEPTH;
+        int marginPercent = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_MARGIN_PERCENT;
+        OpeningBookBuilder builder = new OpeningBookBuilder(depth, marginPercent);
+        builder.build(new Board(), 'r', plies); // red (the human) always moves first
+        OpeningBook book = builder.toBook();
+        book.write(Paths.get(file));
+        System.out.println("Wrote " + book.size() + " moves for " + builder.visited.size() + " positions to " + file);
+    }
+
+    /**
+     * Adds the given position's best moves to the book, and then the positions they lead to
+     * @param board the position, which is left as it was found
+     * @param colour the colour to move
+     * @param plies the number of plies left to cover
+     */
+    private void build(Board board, char colour, int plies) {
+        long key = OpeningBook.key(board, colour);
+        Integer covered = visited.get(key);
+        if (plies == 0 || covered != null && covered >= plies) { // done, or reached already with as many plies left
+            return;
+        }
+        visited.put(key, plies);
+        long[] moves = bookMoves.get(key);
+        if (moves == null) { // not searched yet
+            moves = addBookMoves(board, colour, key);
+            bookMoves.put(key, moves);
+        }
+        char opponent = colour == 'w' ? 'r' : 'w';
+        for (long move : moves) {
+            board.makeMove(move);
+            build(board, opponent, plies - 1);
+            board.unmakeMove(move);
+        }
+    }
+
+    /**
+     * Adds the moves scoring within the margin of the best to the book
+     * @param board the position
+     * @param colour the colour to move
+     * @param key the position's book key
+     * @return the moves added
+     */
+    private long[] addBookMoves(Board board, char colour, long key) {
+        long[] moves = new long[MoveGenerator.MAX_MOVES];
+        int count = moveGenerator.generateMoves(board, colour, moves);
+        int[] scores = scoreMoves(board, moves, count, colour);
+        int best = Integer.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            best = Math.max(best, scores[i]);
+        }
+        int added = 0;
+        for (int i = 0; i < count; i++) {
+            if (scores[i] >= best - margin) {
+                entries.add(new long[]{key, PackedMove.fromTo(moves[i]), margin + 1 - (best - scores[i])});
+                moves[added++] = moves[i];
+            }
+        }
+        return Arrays.copyOf(moves, added);
+    }
+
+    /**
+     * Measures what a man is worth to the given evaluator, as the difference it makes to red's score of the starting
+     * position to take away one of red's men from the back row
+     * @param evaluator the evaluator
+     * @return the value of a man, in the evaluator's units
+     */
+    private static int manValue(Evaluator evaluator) {
+        Board board = new Board();
+        Board withoutMan = new Board(board.getWhite(), board.getRed() & ~(1 << 31), board.getKings());
+        return evaluator.evaluate(board, 'r') - evaluator.evaluate(withoutMan, 'r');
+    }
+
+    /**
+     * Gives every one of the given moves an exact score, searching each with a full window to the builder's depth
+     * @param board the position
+     * @param moves the position's moves
+     * @param count the number of moves
+     * @param colour the colour to move
+     * @return the moves' scores
+     */
+    private int[] scoreMoves(Board board, long[] moves, int count, char colour) {
+        int[] scores = new int[count];
+        if (count == 1) {
+            return scores; // forced, so the score doesn't matter
+        }
+        searcher.newSearch();
+        for (int searchDepth = 1; searchDepth <= depth; searchDepth++) { // deepening fills the table as it goes
+            for (int i = 0; i < count; i++) {
+                scores[i] = searcher.searchMove(board, moves[i], searchDepth, AI.NEGATIVE_INFINITY,
+                                                AI.POSITIVE_INFINITY, colour);
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * @return the book of the entries found, sorted by key and then by weight, heaviest first
+     */
+    private OpeningBook toBook() {
+        entries.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(b[2], a[2]));
+        long[] keys = new long[entries.size()];
+        short[] moves = new short[entries.size()];
+        short[] weights = new short[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            keys[i] = entries.get(i)[0];
+            moves[i] = (short) entries.get(i)[1];
+            weights[i] = (short) entries.get(i)[2];
+        }
+        return new OpeningBook(keys, moves, weights);
+    }
+}
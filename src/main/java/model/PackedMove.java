@@ -0,0 +1,144 @@
+package main.java.model;
+
+import java.awt.*;
+import java.util.ArrayList;
+
+/**
+ * Helpers for moves packed into a long, as used by the search so that it doesn't need a Move object (plus Points and
+ * lists) for every move it looks at. The bits are:
+ *   0-4   destination square (0-31)
+ *   5-9   origin square (0-31)
+ *   10    promotion: set if the moving man becomes a king
+ *   32-63 mask of the squares captured, 0 for a slide
+ *
+ * The low 10 bits (origin and destination) are the same as TranspositionTable.packMove, and are what the killer and
+ * history tables index by.
+ *
+ * @author tp275
+ */
+public final class PackedMove {
+
+    private static final long PROMOTION = 1L << 10;
+
+    private PackedMove() {
+    }
+
+    /**
+     * @param from the origin square
+     * @param to the destination square
+     * @param captured mask of the squares captured (0 for a slide)
+     * @param promotion true if the moving man becomes a king
+     * @return the packed move
+     */
+    public static long encode(int from, int to, int captured, boolean promotion) {
+        return (from << 5) | to | (promotion ? PROMOTION : 0L) | ((long) captured << 32);
+    }
+
+    public static int from(long move) {
+        return (int) (move >>> 5) & 0x1F;
+    }
+
+    public static int to(long move) {
+        return (int) move & 0x1F;
+    }
+
+    public static int captured(long move) {
+        return (int) (move >>> 32);
+    }
+
+    public static boolean isPromotion(long move) {
+        return (move & PROMOTION) != 0;
+    }
+
+    public static boolean isCapture(long move) {
+        return (move >>> 32) != 0;
+    }
+
+    /**
+     * @param move a packed move
+     * @return the move's origin and destination, as made by TranspositionTable.packMove
+     */
+    public static int fromTo(long move) {
+        return (int) move & 0x3FF;
+    }
+
+    /**
+     * Packs the given Move object
+     * @param move the move to pack
+     * @return the packed move
+     */
+    public static long fromMove(Move move) {
+        return encode(Board.toSquare(move.origin.x, move.origin.y),
+                      Board.toSquare(move.destination.x, move.destination.y), Board.capturedMask(move), move.kingPiece);
+    }
+
+    /**
+     * Builds the Move object for the given packed move, as needed by the Controller. For multi-jumps the path of hops
+     * (which the packed move doesn't keep) is worked out again, and given as the Move's previous moves.
+     * @param move the packed move
+     * @param board the position the move is made from
+     * @return the equivalent Move
+     */
+    public static Move toMove(long move, Board board) {
+        int from = from(move);
+        int to = to(move);
+        Move result;
+        int captured = captured(move);
+        if (captured == 0) {
+            result = new Move(point(from), point(to));
+        } else {
+            ArrayList<Move> hops = new ArrayList<>();
+            findPath(from, to, captured, board.getEmpty() | (1 << from), hops);
+            if (hops.size() <= 1) {
+                result = new Move(point(from), point(to), point(Integer.numberOfTrailingZeros(captured)));
+            } else {
+                Move lastHop = hops.remove(hops.size() - 1);
+                result = new Move(hops, lastHop);
+            }
+        }
+        if (isPromotion(move)) {
+            result.setKingPiece();
+        }
+        return result;
+    }
+
+    /**
+     * Depth first search for a sequence of single jumps from the given square to the destination, capturing exactly
+     * the given squares
+     * @param square the square the piece is on
+     * @param to the destination square
+     * @param remaining the captured squares not yet jumped
+     * @param empty mask of squares that can be landed on
+     * @param hops the hops so far, added to as the path is found
+     * @return true if a path was found (and is in hops)
+     */
+    private static boolean findPath(int square, int to, int remaining, int empty, ArrayList<Move> hops) {
+        if (remaining == 0) {
+            return square == to;
+        }
+        for (int direction = 0; direction < 4; direction++) {
+            int over = MoveGenerator.NEIGHBOURS[square][direction];
+            int landing = MoveGenerator.JUMPS[square][direction];
+            if (landing >= 0 && (remaining & (1 << over)) != 0 && (empty & (1 << landing)) != 0) {
+                hops.add(new Move(point(square), point(landing), point(over)));
+                if (findPath(landing, to, remaining & ~(1 << over), empty, hops)) {
+                    return true;
+                }
+                hops.remove(hops.size() - 1);
+            }
+        }
+        return false;
+    }
+
+    private static Point point(int square) {
+        return new Point(Board.toRow(square), Board.toColumn(square));
+    }
+
+    /**
+     * @param move a packed move
+     * @return the move in the same notation as Move.toString, eg. "c6 - d5"
+     */
+    public static String toString(long move) {
+        return new Move(point(from(move)), point(to(move))).toString();
+    }
+}
@@ -0,0 +1,299 @@
+package main.java.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A game read from or to be written to a PDN (Portable Draughts Notation) file by PdnReader or PdnWriter: its tag
+ * pairs, the position it started from, its moves (packed, see PackedMove) and its result.
+ *
+ * PDN numbers the squares 1-32 from Black's side, with Black moving first, so red plays Black and PDN square n is
+ * square 32 - n here. A game that doesn't start from the usual position has a FEN tag, eg. "B:W18,24,K10:B12,16,K22",
+ * giving the side to move (B or W) and then each side's squares, with a K before kings.
+ *
+ * @author tp275
+ */
+public final class PdnGame {
+
+    // results, with the first (Black's) score first, as in English draughts PDN files
+    public static final String RED_WIN = "1-0";
+    public static final String WHITE_WIN = "0-1";
+    public static final String DRAW = "1/2-1/2";
+    public static final String UNKNOWN = "*";
+
+    private final Map<String, String> tags;
+    private final Board startingBoard;
+    private final char startingColour;
+    private final long[] moves;
+    private final String result;
+
+    /**
+     * @param tags the game's tag pairs, in the order to write them (FEN and Result are added as needed when written)
+     * @param startingBoard the position the game started from
+     * @param startingColour the colour to move first
+     * @param moves the game's moves, packed
+     * @param result the result: RED_WIN, WHITE_WIN, DRAW or UNKNOWN
+     */
+    public PdnGame(Map<String, String> tags, Board startingBoard, char startingColour, long[] moves, String result) {
+        this.tags = Collections.unmodifiableMap(new LinkedHashMap<>(tags));
+        this.startingBoard = new Board(startingBoard.getWhite(), startingBoard.getRed(), startingBoard.getKings());
+        this.startingColour = startingColour;
+        this.moves = moves.clone();
+        this.result = result;
+    }
+
+    /**
+     * @return the game's tag pairs, in the order they were read
+     */
+    public Map<String, String> getTags() {
+        return tags;
+    }
+
+    /**
+     * @param name a tag name, eg. "Event"
+     * @return the tag's value, or null if the game doesn't have it
+     */
+    public String getTag(String name) {
+        return tags.get(name);
+    }
+
+    /**
+     * @return a copy of the position the game started from
+     */
+    public Board getStartingBoard() {
+        return new Board(startingBoard);
+    }
+
+    public char getStartingColour() {
+        return startingColour;
+    }
+
+    public int getMoveCount() {
+        return moves.length;
+    }
+
+    /**
+     * @param ply the index of the move, from 0
+     * @return the packed move
+     */
+    public long getMove(int ply) {
+        return moves[ply];
+    }
+
+    /**
+     * @return the result: RED_WIN, WHITE_WIN, DRAW or UNKNOWN
+     */
+    public String getResult() {
+        return result;
+    }
+
+    /**
+     * @param ply the number of moves to play
+     * @return the position after the given number of moves
+     */
+    public Board getBoard(int ply) {
+        Board board = getStartingBoard();
+        for (int i = 0; i < ply; i++) {
+            board.makeMove(moves[i]);
+        }
+        return board;
+    }
+
+    /**
+     * @param ply the number of moves played
+     * @return the colour to move after the given number of moves
+     */
+    public char getColour(int ply) {
+        return (ply % 2 == 0) == (startingColour == 'r') ? 'r' : 'w';
+    }
+
+    /**
+     * @param square a square number (0-31)
+     * @return the square's PDN number (1-32)
+     */
+    static int toNumber(int square) {
+        return 32 - square;
+    }
+
+    /**
+     * @param number a PDN square number (1-32)
+     * @return the square's number here (0-31)
+     */
+    static int toSquare(int number) {
+        return 32 - number;
+    }
+
+    /**
+     * @param move a legal packed move
+     * @param board the position the move is made from
+     * @param colour the colour making the move
+     * @return the move in PDN notation: from and to, eg. "11-15" or "15x24", with every landing square of a capture,
+     * eg. "15x24x31", if another capture shares both squares
+     */
+    static String toNotation(long move, Board board, char colour) {
+        int from = PackedMove.from(move);
+        int to = PackedMove.to(move);
+        if (!PackedMove.isCapture(move)) {
+            return toNumber(from) + "-" + toNumber(to);
+        }
+        boolean ambiguous = false;
+        long[] legalMoves = new long[MoveGenerator.MAX_MOVES];
+        int count = new MoveGenerator().generateMoves(board, colour, legalMoves);
+        for (int i = 0; i < count; i++) {
+            ambiguous |= legalMoves[i] != move && PackedMove.fromTo(legalMoves[i]) == PackedMove.fromTo(move);
+        }
+        if (!ambiguous) {
+            return toNumber(from) + "x" + toNumber(to);
+        }
+        StringBuilder notation = new StringBuilder().append(toNumber(from));
+        ArrayList<Move> hops = PackedMove.toMove(move, board).getPreviousMoves();
+        for (Move hop : hops) {
+            notation.append('x').append(toNumber(Board.toSquare(hop.destination.x, hop.destination.y)));
+        }
+        return notation.append('x').append(toNumber(to)).toString();
+    }
+
+    /**
+     * Finds the legal move the given notation describes
+     * @param notation the move, eg. "11-15" or "15x24x31"
+     * @param legalMoves the legal moves, as made by MoveGenerator.generateMoves
+     * @param count the number of legal moves
+     * @return the packed move
+     * @throws IllegalArgumentException if the notation can't be read or isn't one of the legal moves
+     */
+    static long parseMove(String notation, long[] legalMoves, int count) {
+        int[] squares = parseSquares(notation);
+        int from = squares[0];
+        int to = squares[squares.length - 1];
+        int captured = 0; // the squares jumped over, if every landing square is given
+        for (int i = 1; i < squares.length && squares.length > 2; i++) {
+            int row = Board.toRow(squares[i - 1]) + Board.toRow(squares[i]);
+            int column = Board.toColumn(squares[i - 1]) + Board.toColumn(squares[i]);
+            captured |= 1 << Board.toSquare(row / 2, column / 2);
+        }
+        for (int i = 0; i < count; i++) {
+            long move = legalMoves[i];
+            if (PackedMove.from(move) == from && PackedMove.to(move) == to
+                    && (captured == 0 || PackedMove.captured(move) == captured)) {
+                return move;
+            }
+        }
+        throw new IllegalArgumentException("illegal move " + notation);
+    }
+
+    /**
+     * @param notation a move, eg. "11-15" or "15x24x31"
+     * @return the squares it gives, in order
+     * @throws IllegalArgumentException if the notation isn't two or more square numbers separated by '-', 'x' or ':'
+     */
+    private static int[] parseSquares(String notation) {
+        int[] squares = new int[notation.length()];
+        int count = 0;
+        int number = 0;
+        for (int i = 0; i <= notation.length(); i++) {
+            char c = i < notation.length() ? notation.charAt(i) : '-';
+            if (c >= '0' && c <= '9' && number <= 32) {
+                number = number * 10 + c - '0';
+            } else if ((c == '-' || c == 'x' || c == ':') && number >= 1 && number <= 32) {
+                squares[count++] = toSquare(number);
+                number = 0;
+            } else {
+                throw new IllegalArgumentException("can't read move " + notation);
+            }
+        }
+        if (count < 2) {
+            throw new IllegalArgumentException("can't read move " + notation);
+        }
+        return Arrays.copyOf(squares, count);
+    }
+
+    /**
+     * @param board a position
+     * @param colour the colour to move
+     * @return the position as a PDN FEN string
+     */
+    static String toFen(Board board, char colour) {
+        return (colour == 'r' ? "B" : "W") + ":W" + fenSquares(board.getWhite(), board.getKings()) + ":B"
+               + fenSquares(board.getRed(), board.getKings());
+    }
+
+    private static String fenSquares(int pieces, int kings) {
+        StringBuilder squares = new StringBuilder();
+        for (int number = 1; number <= 32; number++) {
+            int square = toSquare(number);
+            if ((pieces & (1 << square)) != 0) {
+                squares.append(squares.length() > 0 ? "," : "").append((kings & (1 << square)) != 0 ? "K" : "")
+                       .append(number);
+            }
+        }
+        return squares.toString();
+    }
+
+    /**
+     * @param fen a PDN FEN string
+     * @return the colour to move in it
+     * @throws IllegalArgumentException if the string doesn't start with the side to move
+     */
+    static char fenColour(String fen) {
+        String trimmed = fen.trim();
+        if (trimmed.startsWith("B")) {
+            return 'r';
+        } else if (trimmed.startsWith("W")) {
+            return 'w';
+        }
+        throw new IllegalArgumentException("Bad FEN " + fen);
+    }
+
+    /**
+     * Reads the position from a PDN FEN string. Squares can also be given as ranges, eg. "B1-12".
+     * @param fen a PDN FEN string
+     * @return the position
+     * @throws IllegalArgumentException if the string can't be read
+     */
+    static Board parseFen(String fen) {
+        String[] fields = fen.trim().replaceAll("\\.$", "").split(":");
+        int white = 0;
+        int red = 0;
+        int kings = 0;
+        try {
+            for (int i = 1; i < fields.length; i++) {
+                String field = fields[i].trim();
+                if (field.isEmpty()) {
+                    continue;
+                }
+                int pieces = 0;
+                for (String item : field.substring(1).split(",")) {
+                    item = item.trim();
+                    if (item.isEmpty()) {
+                        continue;
+                    }
+                    boolean king = item.startsWith("K");
+                    String numbers = king ? item.substring(1) : item;
+                    int dash = numbers.indexOf('-');
+                    int first = Integer.parseInt(dash < 0 ? numbers : numbers.substring(0, dash));
+                    int last = dash < 0 ? first : Integer.parseInt(numbers.substring(dash + 1));
+                    for (int number = first; number <= last; number++) {
+                        if (number < 1 || number > 32) {
+                            throw new IllegalArgumentException("Bad square " + number + " in FEN " + fen);
+                        }
+                        pieces |= 1 << toSquare(number);
+                        kings |= king ? 1 << toSquare(number) : 0;
+                    }
+                }
+                if (field.charAt(0) == 'W') {
+                    white |= pieces;
+                } else if (field.charAt(0) == 'B') {
+                    red |= pieces;
+                } else {
+                    throw new IllegalArgumentException("Bad FEN " + fen);
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad FEN " + fen, e);
+        }
+        return new Board(white, red, kings);
+    }
+}
@@ -0,0 +1,312 @@
+package main.java.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads the games in a PDN file one at a time (see PdnGame), so a collection of any size can be gone through while
+ * holding only the game being read. Each move is checked against the moves MoveGenerator finds, so games come back
+ * with every move legal.
+ *
+ * Moves are written with PDN square numbers, eg. "11-15" or "15x24" (adding the squares in between, eg. "15x24x31",
+ * where a capture is ambiguous). Move numbers, comments ({...} and ; to the end of the line), variations ((...)),
+ * annotations (!, ?) and numeric annotation glyphs ($n) are skipped. A game ends at its result, or at the next game's
+ * tags. Results written the international way, eg. "2-0", are read as the English ones.
+ *
+ * @author tp275
+ */
+public class PdnReader implements Closeable {
+
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private final MoveGenerator moveGenerator = new MoveGenerator();
+    private final long[] legalMoves = new long[MoveGenerator.MAX_MOVES];
+    private int line = 1;
+
+    /**
+     * @param reader the PDN text to read
+     */
+    public PdnReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @param file a PDN file
+     * @return a reader of the file's games
+     * @throws IOException if the file can't be opened
+     */
+    public static PdnReader open(Path file) throws IOException {
+        return new PdnReader(Files.newBufferedReader(file, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads the next game
+     * @return the game, or null if there are no more
+     * @throws IOException if the input can't be read, or a game has a tag, FEN or move which can't be read or isn't
+     * legal
+     */
+    public PdnGame next() throws IOException {
+        Map<String, String> tags = new LinkedHashMap<>();
+        Board board = null; // set up once the tags have been read
+        char startingColour = 'r';
+        char colour = 'r';
+        long[] moves = new long[64];
+        int moveCount = 0;
+        while (true) {
+            skipWhitespace();
+            int c = peek();
+            if (c == '[' && board == null) {
+                read();
+                readTag(tags);
+                continue;
+            }
+            if (board == null) {
+                if (c == -1 && tags.isEmpty()) {
+                    return null;
+                }
+                String fen = tags.get("FEN");
+                board = fen == null ? new Board() : parseFen(fen);
+                startingColour = fen == null ? 'r' : PdnGame.fenColour(fen);
+                colour = startingColour;
+            }
+
+            String result = null;
+            if (c == -1 || c == '[') { // the game ended without a result
+                result = tags.getOrDefault("Result", PdnGame.UNKNOWN);
+            } else if (c == '{') {
+                skipPast('}');
+            } else if (c == ';') {
+                skipPast('\n');
+            } else if (c == '(') {
+                skipVariation();
+            } else {
+                String token = readToken();
+                result = result(token) != null ? token : null;
+                String move = stripAnnotations(token);
+                if (result == null && !move.isEmpty() && !move.startsWith("$")) { // not a move number or glyph
+                    if (moveCount == moves.length) {
+                        moves = Arrays.copyOf(moves, moveCount * 2);
+                    }
+                    moves[moveCount] = parseMove(move, board, colour);
+                    board.makeMove(moves[moveCount++]);
+                    colour = colour == 'w' ? 'r' : 'w';
+                }
+            }
+            if (result != null) {
+                for (int i = moveCount - 1; i >= 0; i--) { // take the moves back, to get to the starting position
+                    board.unmakeMove(moves[i]);
+                }
+                String normalised = result(result);
+                return new PdnGame(tags, board, startingColour, Arrays.copyOf(moves, moveCount),
+                                   normalised == null ? PdnGame.UNKNOWN : normalised);
+            }
+        }
+    }
+
+    /**
+     * @return the remaining games, read as they are needed. Errors reading a game are thrown as UncheckedIOException.
+     */
+    public Stream<PdnGame> games() {
+        Iterator<PdnGame> iterator = new Iterator<PdnGame>() {
+            private PdnGame nextGame;
+
+            @Override
+            public boolean hasNext() {
+                if (nextGame == null) {
+                    try {
+                        nextGame = PdnReader.this.next();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return nextGame != null;
+            }
+
+            @Override
+            public PdnGame next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                PdnGame game = nextGame;
+                nextGame = null;
+                return game;
+            }
+        };
+        int characteristics = Spliterator.ORDERED | Spliterator.NONNULL;
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, characteristics), false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * @param token a token from the move text
+     * @return the result it gives, or null if it isn't a result
+     */
+    private static String result(String token) {
+        switch (token) {
+            case "1-0":
+            case "2-0":
+                return PdnGame.RED_WIN;
+            case "0-1":
+            case "0-2":
+                return PdnGame.WHITE_WIN;
+            case "1/2-1/2":
+            case "1-1":
+                return PdnGame.DRAW;
+            case "*":
+                return PdnGame.UNKNOWN;
+            default:
+                return null;
+        }
+    }
+
+    private Board parseFen(String fen) throws IOException {
+        try {
+            PdnGame.fenColour(fen); // checked here, so that it can be read without a check later
+            return PdnGame.parseFen(fen);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Line " + line + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Finds the legal move the given notation describes
+     * @param notation the move, eg. "11-15" or "15x24x31"
+     * @param board the position the move is made from
+     * @param colour the colour making the move
+     * @return the packed move
+     * @throws IOException if the notation can't be read or isn't a legal move
+     */
+    private long parseMove(String notation, Board board, char colour) throws IOException {
+        try {
+            return PdnGame.parseMove(notation, legalMoves, moveGenerator.generateMoves(board, colour, legalMoves));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Line " + line + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void readTag(Map<String, String> tags) throws IOException {
+        StringBuilder name = new StringBuilder();
+        skipWhitespace();
+        for (int c = peek(); c != -1 && c != '"' && c != ']' && !Character.isWhitespace(c); c = peek()) {
+            name.append((char) read());
+        }
+        skipWhitespace();
+        StringBuilder value = new StringBuilder();
+        if (peek() == '"') {
+            read();
+            for (int c = read(); c != '"'; c = read()) {
+                if (c == -1) {
+                    throw new IOException("Line " + line + ": unterminated tag " + name);
+                }
+                value.append((char) (c == '\\' ? read() : c));
+            }
+        }
+        skipPast(']');
+        tags.put(name.toString(), value.toString());
+    }
+
+    /**
+     * @return the characters up to the next whitespace or the start of a comment, variation or tag
+     */
+    private String readToken() throws IOException {
+        StringBuilder token = new StringBuilder();
+        for (int c = peek(); c != -1 && !Character.isWhitespace(c) && "{}()[];".indexOf(c) < 0; c = peek()) {
+            token.append((char) read());
+        }
+        if (token.length() == 0) {
+            read(); // a stray closing bracket
+        }
+        return token.toString();
+    }
+
+    private void skipVariation() throws IOException {
+        int depth = 0;
+        for (int c = read(); c != -1; c = read()) {
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return;
+            } else if (c == '{') {
+                skipPast('}');
+            }
+        }
+    }
+
+    private void skipPast(char end) throws IOException {
+        for (int c = read(); c != -1 && c != end; c = read()) {
+            continue;
+        }
+    }
+
+    private void skipWhitespace() throws IOException {
+        for (int c = peek(); c != -1 && Character.isWhitespace(c); c = peek()) {
+            read();
+        }
+    }
+
+    /**
+     * @param token a token from the move text
+     * @return the token without a leading move number (eg. "1." or "1...") or trailing annotation (eg. "!?")
+     */
+    private static String stripAnnotations(String token) {
+        int start = 0;
+        while (start < token.length() && Character.isDigit(token.charAt(start))) {
+            start++;
+        }
+        if (start < token.length() && token.charAt(start) == '.') {
+            while (start < token.length() && token.charAt(start) == '.') {
+                start++;
+            }
+        } else {
+            start = 0; // the digits were part of a move
+        }
+        int end = token.length();
+        while (end > start && (token.charAt(end - 1) == '!' || token.charAt(end - 1) == '?')) {
+            end--;
+        }
+        return token.substring(start, end);
+    }
+
+    private int peek() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position];
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        if (c != -1) {
+            position++;
+        }
+        if (c == '\n') {
+            line++;
+        }
+        return c;
+    }
+}
@@ -0,0 +1,108 @@
+package main.java.model;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Writes games to a PDN file one at a time (see PdnGame), in the form PdnReader reads: the tag pairs, with a FEN tag
+ * if the game doesn't start from the usual position, then the numbered moves (see PdnGame.toNotation) wrapped at 80
+ * columns, then the result.
+ *
+ * @author tp275
+ */
+public class PdnWriter implements Closeable, Flushable {
+
+    private static final int LINE_LENGTH = 80;
+
+    private final Writer writer;
+
+    /**
+     * @param writer where to write the PDN text
+     */
+    public PdnWriter(Writer writer) {
+        this.writer = writer instanceof BufferedWriter ? writer : new BufferedWriter(writer);
+    }
+
+    /**
+     * @param file the PDN file to write, replacing it if it exists
+     * @return a writer to the file
+     * @throws IOException if the file can't be opened
+     */
+    public static PdnWriter create(Path file) throws IOException {
+        return new PdnWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes a game, followed by a blank line
+     * @param game the game to write
+     * @throws IOException if the game can't be written
+     */
+    public void write(PdnGame game) throws IOException {
+        Board board = game.getStartingBoard();
+        char colour = game.getStartingColour();
+        String fen = PdnGame.toFen(board, colour);
+        boolean usualStart = colour == 'r' && fen.equals(PdnGame.toFen(new Board(), 'r'));
+        for (Map.Entry<String, String> tag : game.getTags().entrySet()) {
+            if (!tag.getKey().equals("Result") && !tag.getKey().equals("FEN")) {
+                writeTag(tag.getKey(), tag.getValue());
+            }
+        }
+        if (!usualStart) {
+            writeTag("FEN", fen);
+        }
+        writeTag("Result", game.getResult());
+
+        StringBuilder text = new StringBuilder();
+        int lineStart = 0;
+        for (int ply = 0; ply < game.getMoveCount(); ply++) {
+            long move = game.getMove(ply);
+            String token = PdnGame.toNotation(move, board, colour);
+            if (colour == 'r' || ply == 0) { // numbered when Black moves, or "1..." if White moves first
+                int number = (ply + (game.getStartingColour() == 'r' ? 0 : 1)) / 2 + 1;
+                token = number + (colour == 'r' ? ". " : "... ") + token;
+            }
+            lineStart = append(text, lineStart, token);
+            board.makeMove(move);
+            colour = colour == 'w' ? 'r' : 'w';
+        }
+        append(text, lineStart, game.getResult());
+        writer.write(text.toString());
+        writer.write("\n\n");
+    }
+
+    /**
+     * Appends a token to the move text, starting a new line first if it would go past LINE_LENGTH
+     * @return the index the (possibly new) current line starts at
+     */
+    private static int append(StringBuilder text, int lineStart, String token) {
+        if (text.length() > lineStart && text.length() - lineStart + 1 + token.length() > LINE_LENGTH) {
+            text.append('\n');
+            lineStart = text.length();
+        } else if (text.length() > lineStart) {
+            text.append(' ');
+        }
+        text.append(token);
+        return lineStart;
+    }
+
+    private void writeTag(String name, String value) throws IOException {
+        writer.write("[" + name + " \"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"]\n");
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
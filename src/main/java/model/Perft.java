@@ -0,0 +1,179 @@
+package main.java.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Performance test (perft): counts the positions reached after every possible sequence of moves to a given depth.
+ * Comparing the counts from the start position with the published numbers checks the move generator (and make/unmake)
+ * exactly, and timing them measures their raw speed without the search getting in the way.
+ *
+ * Usage: "Perft [depth] [position] [divide] [parallel]", where position is the colour to move and the squares as read
+ * by Board.parse (default the start position), divide prints the count after each root move, and parallel counts on
+ * every core with fork/join. From the start position each depth up to the given one is counted and checked.
+ *
+ * @author tp275
+ */
+public final class Perft {
+
+    /** The published perft counts from the start position, indexed by depth */
+    static final long[] START_POSITION_COUNTS = {1L, 7L, 49L, 302L, 1469L, 7361L, 36768L, 179740L, 845931L, 3963680L,
+                                                 18391564L, 85242128L, 388617999L};
+    private static final String START_POSITION = "r:wwwwwwwwwwww--------rrrrrrrrrrrr";
+    private static final int SEQUENTIAL_DEPTH = 6; // subtrees this shallow are counted by one task
+
+    private final MoveGenerator moveGenerator = new MoveGenerator();
+    private final long[][] moveStack; // each ply's moves
+
+    private Perft(int depth) {
+        moveStack = new long[Math.max(depth, 1)][MoveGenerator.MAX_MOVES];
+    }
+
+    /**
+     * @param args the depth (default 8), the position, and the "divide" and "parallel" options, in any order
+     */
+    public static void main(String[] args) {
+        int depth = 8;
+        String position = START_POSITION;
+        boolean divide = false;
+        boolean parallel = false;
+        for (String arg : args) {
+            if (arg.equals("divide")) {
+                divide = true;
+            } else if (arg.equals("parallel")) {
+                parallel = true;
+            } else if (arg.contains(":")) {
+                position = arg;
+            } else {
+                depth = Integer.parseInt(arg);
+            }
+        }
+        Board board = Board.parse(position.substring(position.indexOf(':') + 1));
+        char colour = position.charAt(0);
+        System.out.println(board);
+
+        if (divide) {
+            divide(board, colour, depth, parallel);
+        } else if (position.equals(START_POSITION)) {
+            boolean allCorrect = true;
+            for (int d = 1; d <= depth; d++) {
+                long expected = d < START_POSITION_COUNTS.length ? START_POSITION_COUNTS[d] : -1;
+                allCorrect &= report(board, colour, d, parallel, expected);
+            }
+            System.out.println(allCorrect ? "All counts match" : "COUNTS DON'T MATCH");
+        } else {
+            report(board, colour, depth, parallel, -1);
+        }
+    }
+
+    /**
+     * Counts and prints the given position's perft to the given depth, and checks it against the expected count
+     * @param expected the expected count, or -1 if it isn't known
+     * @return false if the count didn't match the expected count
+     */
+    private static boolean report(Board board, char colour, int depth, boolean parallel, long expected) {
+        long start = System.nanoTime();
+        long count = parallel ? countParallel(board, colour, depth) : count(board, colour, depth);
+        long elapsed = Math.max(1, System.nanoTime() - start);
+        String check = expected < 0 ? "" : (count == expected ? "ok" : "EXPECTED " + expected);
+        System.out.printf("perft(%d) = %d in %d ms (%.0f positions/s) %s%n", depth, count, elapsed / 1000000,
+                          count * 1e9 / elapsed, check);
+        return expected < 0 || count == expected;
+    }
+
+    /**
+     * Prints the perft count after each root move, which narrows a wrong total down to the move whose subtree is wrong
+     */
+    private static void divide(Board board, char colour, int depth, boolean parallel) {
+        long[] moves = new long[MoveGenerator.MAX_MOVES];
+        int count = new MoveGenerator().generateMoves(board, colour, moves);
+        char opponent = colour == 'w' ? 'r' : 'w';
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            Board child = new Board(board);
+            child.makeMove(moves[i]);
+            long moveCount = parallel ? countParallel(child, opponent, depth - 1) : count(child, opponent, depth - 1);
+            total += moveCount;
+            System.out.println(PackedMove.toString(moves[i]) + ": " + moveCount);
+        }
+        System.out.println("Moves: " + count + ", total: " + total);
+    }
+
+    /**
+     * Counts the positions reached after every sequence of the given number of moves, on the calling thread
+     * @param board the position to start from
+     * @param colour the colour to move
+     * @param depth the number of moves
+     * @return the number of positions (sequences of moves) at the given depth
+     */
+    public static long count(Board board, char colour, int depth) {
+        return new Perft(depth).perft(new Board(board), colour, depth, 0);
+    }
+
+    /**
+     * As count, but counts the subtrees in parallel in the common fork/join pool
+     */
+    public static long countParallel(Board board, char colour, int depth) {
+        return ForkJoinPool.commonPool().invoke(new PerftTask(new Board(board), colour, depth));
+    }
+
+    private long perft(Board board, char colour, int depth, int ply) {
+        if (depth == 0) {
+            return 1;
+        }
+        long[] moves = moveStack[ply];
+        int count = moveGenerator.generateMoves(board, colour, moves);
+        if (depth == 1) { // the moves are the positions, so no need to make them
+            return count;
+        }
+        char opponent = colour == 'w' ? 'r' : 'w';
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            board.makeMove(moves[i]);
+            total += perft(board, opponent, depth - 1, ply + 1);
+            board.unmakeMove(moves[i]);
+        }
+        return total;
+    }
+
+    /**
+     * Splits the tree into a task per move until the subtrees are small enough to count on one thread
+     */
+    private static class PerftTask extends RecursiveTask<Long> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Board board;
+        private final char colour;
+        private final int depth;
+
+        PerftTask(Board board, char colour, int depth) {
+            this.board = board;
+            this.colour = colour;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Long compute() {
+            if (depth <= SEQUENTIAL_DEPTH) {
+                return new Perft(depth).perft(board, colour, depth, 0);
+            }
+            long[] moves = new long[MoveGenerator.MAX_MOVES];
+            int count = new MoveGenerator().generateMoves(board, colour, moves);
+            char opponent = colour == 'w' ? 'r' : 'w';
+            List<PerftTask> subtasks = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Board child = new Board(board);
+                child.makeMove(moves[i]);
+                subtasks.add(new PerftTask(child, opponent, depth - 1));
+            }
+            long total = 0;
+            for (PerftTask subtask : invokeAll(subtasks)) {
+                total += subtask.join();
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package main.java.model;
+
+import java.util.function.IntBinaryOperator;
+
+/**
+ * A value for every kind of piece on every square, scoring a position as the sum of the values of its pieces. A
+ * Board can keep the sum up to date as moves are made (see Board.setPieceSquareTable), adding and taking away just the
+ * values of the pieces that move, get captured or are crowned, in the same way as it keeps its Zobrist hash.
+ *
+ * @author tp275
+ */
+public final class PieceSquareTable {
+
+    private final int[] values = new int[4 * 32]; // indexed by Zobrist piece type * 32 + square
+
+    /**
+     * @param value gives the value of a piece, from white's point of view, given its Zobrist piece type and square
+     */
+    PieceSquareTable(IntBinaryOperator value) {
+        for (int piece = Zobrist.WHITE_MAN; piece <= Zobrist.RED_KING; piece++) {
+            for (int square = 0; square < 32; square++) {
+                values[(piece << 5) | square] = value.applyAsInt(piece, square);
+            }
+        }
+    }
+
+    /**
+     * Builds the table of a heuristic which scores a position as the sum of separate scores for each piece, by scoring
+     * a board with each piece on its own
+     * @param heuristic the heuristic, which must be a sum over the pieces
+     * @return the heuristic's table
+     */
+    static PieceSquareTable of(Heuristic heuristic) {
+        return new PieceSquareTable((piece, square) -> {
+            int mask = 1 << square;
+            boolean white = piece == Zobrist.WHITE_MAN || piece == Zobrist.WHITE_KING;
+            boolean king = piece == Zobrist.WHITE_KING || piece == Zobrist.RED_KING;
+            return heuristic.score(new Board(white ? mask : 0, white ? 0 : mask, king ? mask : 0));
+        });
+    }
+
+    /**
+     * @param piece the Zobrist piece type
+     * @param square the square (0-31)
+     * @return the value of the given piece on the given square, from white's point of view
+     */
+    int value(int piece, int square) {
+        return values[(piece << 5) | square];
+    }
+
+    /**
+     * Adds up the values of every piece in the given position
+     * @param white mask of squares holding white pieces
+     * @param red mask of squares holding red pieces
+     * @param kings mask of squares holding kings
+     * @return the position's score, from white's point of view
+     */
+    int score(int white, int red, int kings) {
+        int score = 0;
+        for (int pieces = white; pieces != 0; pieces &= pieces - 1) {
+            int square = Integer.numberOfTrailingZeros(pieces);
+            score += value((kings & (1 << square)) != 0 ? Zobrist.WHITE_KING : Zobrist.WHITE_MAN, square);
+        }
+        for (int pieces = red; pieces != 0; pieces &= pieces - 1) {
+            int square = Integer.numberOfTrailingZeros(pieces);
+            score += value((kings & (1 << square)) != 0 ? Zobrist.RED_KING : Zobrist.RED_MAN, square);
+        }
+        return score;
+    }
+}
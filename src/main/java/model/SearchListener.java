@@ -0,0 +1,23 @@
+package main.java.model;
+
+/**
+ * Receives the statistics of an AI's searches as they happen, eg. to log or monitor them (see SearchMonitor). Called
+ * on the searching thread, so should return quickly.
+ *
+ * @author tp275
+ */
+public interface SearchListener {
+
+    /**
+     * Called each time the search completes an iteration of its iterative deepening
+     * @param statistics the search's statistics so far
+     */
+    default void iterationFinished(SearchStatistics statistics) {
+    }
+
+    /**
+     * Called when the search has chosen its move, including moves chosen without searching
+     * @param statistics the search's statistics
+     */
+    void searchFinished(SearchStatistics statistics);
+}
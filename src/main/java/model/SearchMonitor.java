@@ -0,0 +1,144 @@
+package main.java.model;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Keeps the statistics of an AI's searches, as a SearchListener, and publishes them as a JMX MXBean once registered,
+ * so a running game can be watched with JConsole or any other JMX client.
+ *
+ * @author tp275
+ */
+public class SearchMonitor implements SearchListener, SearchMonitorMXBean {
+
+    private static final SearchStatistics NO_SEARCH = new SearchStatistics(SearchStatistics.Source.SEARCH, 0, 0, 0,
+                                                                           0, 0, 0, 0, 0, 0, 0, 0, 0, new long[0], 0,
+                                                                           0);
+
+    private volatile SearchStatistics last = NO_SEARCH;
+    // totals, guarded by this
+    private long searches;
+    private long totalNodes;
+    private long totalNanos;
+    private long totalIterations;
+    private long totalAspirationResearches;
+
+    /**
+     * Registers this monitor with the platform MBean server, under "main.java.model:type=SearchMonitor,name=" and the
+     * given name
+     * @param name the name to tell this AI's monitor apart from any others
+     * @throws JMException if the name is taken or can't be used
+     */
+    public void register(String name) throws JMException {
+        ObjectName objectName = new ObjectName(getClass().getPackage().getName() + ":type=SearchMonitor,name="
+                                               + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+    }
+
+    @Override
+    public synchronized void searchFinished(SearchStatistics statistics) {
+        last = statistics;
+        searches++;
+        totalNodes += statistics.getNodes() + statistics.getQuiescenceNodes();
+        totalNanos += statistics.getElapsedNanos();
+        totalIterations += statistics.getDepth();
+        totalAspirationResearches += statistics.getAspirationResearches();
+    }
+
+    /**
+     * @return the statistics of the most recent search
+     */
+    public SearchStatistics getLastStatistics() {
+        return last;
+    }
+
+    @Override
+    public synchronized long getSearches() {
+        return searches;
+    }
+
+    @Override
+    public synchronized long getTotalNodes() {
+        return totalNodes;
+    }
+
+    @Override
+    public synchronized double getAverageNodesPerSecond() {
+        return totalNanos == 0 ? 0 : totalNodes * 1e9 / totalNanos;
+    }
+
+    @Override
+    public synchronized double getAspirationResearchRate() {
+        return totalIterations == 0 ? 0 : (double) totalAspirationResearches / totalIterations;
+    }
+
+    @Override
+    public String getLastSource() {
+        return last.getSource().name();
+    }
+
+    @Override
+    public String getLastMove() {
+        return last.getMove();
+    }
+
+    @Override
+    public int getLastScore() {
+        return last.getScore();
+    }
+
+    @Override
+    public int getLastDepth() {
+        return last.getDepth();
+    }
+
+    @Override
+    public int getLastSelectiveDepth() {
+        return last.getSelectiveDepth();
+    }
+
+    @Override
+    public long getLastNodes() {
+        return last.getNodes() + last.getQuiescenceNodes();
+    }
+
+    @Override
+    public double getLastNodesPerSecond() {
+        return last.getNodesPerSecond();
+    }
+
+    @Override
+    public long getLastBetaCutoffs() {
+        return last.getBetaCutoffs();
+    }
+
+    @Override
+    public double getLastFirstMoveCutoffRate() {
+        return last.getFirstMoveCutoffRate();
+    }
+
+    @Override
+    public double getLastHashHitRate() {
+        return last.getHashHitRate();
+    }
+
+    @Override
+    public int getLastAspirationResearches() {
+        return last.getAspirationResearches();
+    }
+
+    @Override
+    public long getLastElapsedMillis() {
+        return last.getElapsedNanos() / 1000000;
+    }
+
+    @Override
+    public long[] getLastIterationMillis() {
+        long[] iterationMillis = last.getIterationNanos();
+        for (int i = 0; i < iterationMillis.length; i++) {
+            iterationMillis[i] /= 1000000;
+        }
+        return iterationMillis;
+    }
+}
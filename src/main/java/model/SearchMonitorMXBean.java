@@ -0,0 +1,47 @@
+package main.java.model;
+
+/**
+ * The management interface of SearchMonitor, through which tools such as JConsole read an AI's search statistics.
+ * Attributes named Last... are those of the most recent search, and the rest are totals over every search.
+ *
+ * @author tp275
+ */
+public interface SearchMonitorMXBean {
+
+    long getSearches();
+
+    long getTotalNodes();
+
+    double getAverageNodesPerSecond();
+
+    /**
+     * @return the number of root searches repeated because of a score outside the aspiration window, per iteration
+     */
+    double getAspirationResearchRate();
+
+    String getLastSource();
+
+    String getLastMove();
+
+    int getLastScore();
+
+    int getLastDepth();
+
+    int getLastSelectiveDepth();
+
+    long getLastNodes();
+
+    double getLastNodesPerSecond();
+
+    long getLastBetaCutoffs();
+
+    double getLastFirstMoveCutoffRate();
+
+    double getLastHashHitRate();
+
+    int getLastAspirationResearches();
+
+    long getLastElapsedMillis();
+
+    long[] getLastIterationMillis();
+}
@@ -0,0 +1,200 @@
+package main.java.model;
+
+/**
+ * What one search (or one iteration of it) did: how it chose its move, how many nodes it searched and how quickly, how
+ * well its move ordering and transposition table worked, and how deep it got. Counts are those of the calling
+ * thread's searcher, not counting any helper threads, apart from the table's, which every thread shares.
+ *
+ * @author tp275
+ */
+public final class SearchStatistics {
+
+    /**
+     * Where a search's move came from
+     */
+    public enum Source {
+        SEARCH, // searched as normal
+        PONDER, // searched as normal, starting while the opponent was thinking
+        BOOK, // played from the opening book, without searching
+        TABLEBASE, // every move's result looked up in the tablebase, without searching
+        FORCED // the only move
+    }
+
+    private final Source source;
+    private final long move; // packed, or 0 if none has been chosen
+    private final int score;
+    private final int depth;
+    private final int selectiveDepth;
+    private final long nodes;
+    private final long quiescenceNodes;
+    private final long betaCutoffs;
+    private final long firstMoveCutoffs;
+    private final long hashProbes;
+    private final long hashHits;
+    private final long tablebaseHits;
+    private final long elapsedNanos;
+    private final long[] iterationNanos;
+    private final int aspirationFailLows;
+    private final int aspirationFailHighs;
+
+    /**
+     * @param source where the move came from
+     * @param move the move chosen (so far), packed, or 0 if none has been
+     * @param score the move's score, from the point of view of the colour to move
+     * @param depth the deepest iteration completed
+     * @param selectiveDepth the most plies from the root reached, including by the quiescence search
+     * @param nodes the number of nodes searched, not counting quiescence nodes
+     * @param quiescenceNodes the number of quiescence nodes searched
+     * @param betaCutoffs the number of nodes cut off by a move scoring at least beta
+     * @param firstMoveCutoffs the number of those cut off by the first move searched
+     * @param hashProbes the number of transposition table lookups
+     * @param hashHits the number of those which found their position
+     * @param tablebaseHits the number of positions found in the tablebase
+     * @param elapsedNanos the time taken so far
+     * @param iterationNanos the time each completed iteration took, indexed by depth - 1
+     * @param aspirationFailLows the number of root searches whose best score fell below their aspiration window
+     * @param aspirationFailHighs the number whose best score rose above it
+     */
+    SearchStatistics(Source source, long move, int score, int depth, int selectiveDepth, long nodes,
+                     long quiescenceNodes, long betaCutoffs, long firstMoveCutoffs, long hashProbes, long hashHits,
+                     long tablebaseHits, long elapsedNanos, long[] iterationNanos, int aspirationFailLows,
+                     int aspirationFailHighs) {
+        this.source = source;
+        this.move = move;
+        this.score = score;
+        this.depth = depth;
+        this.selectiveDepth = selectiveDepth;
+        this.nodes = nodes;
+        this.quiescenceNodes = quiescenceNodes;
+        this.betaCutoffs = betaCutoffs;
+        this.firstMoveCutoffs = firstMoveCutoffs;
+        this.hashProbes = hashProbes;
+        this.hashHits = hashHits;
+        this.tablebaseHits = tablebaseHits;
+        this.elapsedNanos = elapsedNanos;
+        this.iterationNanos = iterationNanos;
+        this.aspirationFailLows = aspirationFailLows;
+        this.aspirationFailHighs = aspirationFailHighs;
+    }
+
+    public Source getSource() {
+        return source;
+    }
+
+    /**
+     * @return the move chosen (so far), or null if none has been
+     */
+    public String getMove() {
+        return move == 0 ? null : PackedMove.toString(move);
+    }
+
+    /**
+     * @return the move chosen (so far), packed (see PackedMove), or 0 if none has been
+     */
+    public long getPackedMove() {
+        return move;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * @return the deepest iteration completed
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return the most plies from the root reached, including by the quiescence search
+     */
+    public int getSelectiveDepth() {
+        return selectiveDepth;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getQuiescenceNodes() {
+        return quiescenceNodes;
+    }
+
+    /**
+     * @return nodes (including quiescence nodes) searched per second
+     */
+    public double getNodesPerSecond() {
+        return elapsedNanos == 0 ? 0 : (nodes + quiescenceNodes) * 1e9 / elapsedNanos;
+    }
+
+    public long getBetaCutoffs() {
+        return betaCutoffs;
+    }
+
+    /**
+     * @return the proportion of beta cutoffs made by the first move searched: the closer to 1, the better the move
+     * ordering
+     */
+    public double getFirstMoveCutoffRate() {
+        return betaCutoffs == 0 ? 0 : (double) firstMoveCutoffs / betaCutoffs;
+    }
+
+    public long getHashProbes() {
+        return hashProbes;
+    }
+
+    /**
+     * @return the proportion of transposition table lookups which found their position
+     */
+    public double getHashHitRate() {
+        return hashProbes == 0 ? 0 : (double) hashHits / hashProbes;
+    }
+
+    public long getTablebaseHits() {
+        return tablebaseHits;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return the time each completed iteration took in nanoseconds, indexed by depth - 1
+     */
+    public long[] getIterationNanos() {
+        return iterationNanos.clone();
+    }
+
+    /**
+     * @return the number of times an iteration's root search fell below its aspiration window (see
+     * AI.setAspirationWindow), and was searched again with the window lowered
+     */
+    public int getAspirationFailLows() {
+        return aspirationFailLows;
+    }
+
+    /**
+     * @return the number of times an iteration's root search rose above its aspiration window, and was searched again
+     * with the window raised
+     */
+    public int getAspirationFailHighs() {
+        return aspirationFailHighs;
+    }
+
+    /**
+     * @return the number of root searches repeated because their score fell outside the aspiration window
+     */
+    public int getAspirationResearches() {
+        return aspirationFailLows + aspirationFailHighs;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s score %d depth %d/%d nodes %d+%d (%.0f/s) cutoffs %d (%.1f%% first) hash %.1f%% " +
+                             "tablebase %d re-searches %d low %d high in %d ms", source, getMove(), score, depth,
+                             selectiveDepth, nodes, quiescenceNodes, getNodesPerSecond(), betaCutoffs,
+                             getFirstMoveCutoffRate() * 100, getHashHitRate() * 100, tablebaseHits, aspirationFailLows,
+                             aspirationFailHighs, elapsedNanos / 1000000);
+    }
+}
@@ -0,0 +1,515 @@
+package main.java.model;
+
+import java.util.Arrays;
+
+/**
+ * One thread's worth of alpha-beta (negamax) search. Searchers keep their own move generator and make/unmake moves on
+ * their own board, and only share the (thread-safe) transposition table, so several can search the same position at
+ * once.
+ *
+ * Moves are packed into longs (see PackedMove) and generated into an array kept for each ply, so the search allocates
+ * nothing as it goes.
+ *
+ * @author tp275
+ */
+class Searcher {
+
+    static final int WIN_SCORE = 1000000; // less the number of plies to the win, so that quicker wins score higher
+    static final int WIN_THRESHOLD = WIN_SCORE - 10000;
+    private static final int DEADLINE_CHECK_NODES = 1024; // must be a power of two
+
+    private final MoveGenerator moveGenerator = new MoveGenerator();
+    private final TranspositionTable transpositionTable;
+    private final MoveOrderer moveOrderer = new MoveOrderer();
+    private Tablebase tablebase; // null if there isn't one
+    private Evaluator evaluator = IncrementalEvaluator.of(Heuristic.PIECE_AND_ROW);
+    private boolean moveOrdering = true;
+    private boolean quiescence = true;
+    private volatile boolean stopped = false;
+    private volatile boolean timeLimited = false; // (the deadline may be set while searching, eg. after pondering)
+    private volatile long deadline; // System.nanoTime() value to stop at, if time limited
+    private long nodeLimit; // nodes (including quiescence nodes) to stop after, or 0 for no limit
+    private long nodes;
+    private long quiescenceNodes;
+    private long tablebaseHits;
+    private long betaCutoffs;
+    private long firstMoveCutoffs; // beta cutoffs by the first move searched, a measure of the move ordering
+    private int selectiveDepth; // the most plies from the root reached, including by the quiescence search
+    private long[][] moveStack = new long[MoveOrderer.MAX_PLY][MoveGenerator.MAX_MOVES]; // each ply's moves
+
+    /**
+     * @param transpositionTable the table to share with any other searchers
+     */
+    Searcher(TranspositionTable transpositionTable) {
+        this.transpositionTable = transpositionTable;
+    }
+
+    /**
+     * Makes the given root move and searches the resulting position to the given depth, within the given window
+     * @param board the root position, which is left as it was found
+     * @param move the packed root move to search
+     * @param depth the depth to search to after the root move
+     * @param alpha the score the root colour is already guaranteed
+     * @param beta the score above which the root move doesn't need an exact score
+     * @param color the colour making the root move, whose point of view the score is from
+     * @return the move's score, or meaningless if the searcher was stopped part way through
+     */
+    int searchMove(Board board, long move, int depth, int alpha, int beta, char color) {
+        PieceSquareTable table = evaluator.getPieceSquareTable();
+        if (board.getPieceSquareTable() != table) { // have the board keep the evaluator's score as moves are made
+            board.setPieceSquareTable(table);
+        }
+        board.makeMove(move);
+        int result = -negamax(board, depth, -beta, -alpha, opponent(color), 1);
+        board.unmakeMove(move);
+        return result;
+    }
+
+    /**
+     * Iteratively deepens through the given root moves until stopped, only to fill the shared transposition table for
+     * other searchers. Helpers start on different depths and move orders so that they don't all repeat the same work.
+     * @param board the root position
+     * @param moves the packed root moves
+     * @param color the colour to move at the root
+     * @param helperNumber this helper's number (from 1), used to vary its starting depth and root move order
+     */
+    void searchUntilStopped(Board board, long[] moves, char color, int helperNumber) {
+        Board searchBoard = new Board(board);
+        for (int depth = 1 + (helperNumber & 1); !stopped; depth++) {
+            for (int i = 0; i < moves.length; i++) {
+                long move = moves[(i + helperNumber) % moves.length];
+                searchMove(searchBoard, move, depth, AI.NEGATIVE_INFINITY, AI.POSITIVE_INFINITY, color);
+                if (stopped) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets ready to search a new position: forgets the last search's killer moves and ages its history scores (see
+     * MoveOrderer.age), and clears its limits
+     */
+    void newSearch() {
+        moveOrderer.age();
+        stopped = false;
+        timeLimited = false;
+        nodeLimit = 0;
+    }
+
+    /**
+     * Forgets the killer moves and history scores entirely, eg. when positions are no longer scored as they were
+     */
+    void clearHistory() {
+        moveOrderer.clear();
+    }
+
+    /**
+     * Makes the searcher stop itself once System.nanoTime() passes the given time. The time is checked every
+     * DEADLINE_CHECK_NODES nodes, so the search stops within a fraction of a millisecond of it. May be called while
+     * the searcher is searching, from another thread.
+     * @param deadline the System.nanoTime() value to stop at
+     */
+    void setDeadline(long deadline) {
+        this.deadline = deadline; // set before timeLimited, which publishes it to the searching thread
+        this.timeLimited = true;
+    }
+
+    /**
+     * Makes the searcher stop itself once it has visited the given number of nodes (counting quiescence nodes) since
+     * its nodes were last reset. Like the deadline, this is checked every DEADLINE_CHECK_NODES nodes, but unlike it the
+     * result doesn't depend on the speed of the machine, so searches limited this way can be repeated exactly.
+     * @param nodeLimit the number of nodes to stop after
+     */
+    void setNodeLimit(long nodeLimit) {
+        this.nodeLimit = nodeLimit;
+    }
+
+    /**
+     * @param evaluator the evaluator to score positions with at the depth limit
+     */
+    void setEvaluator(Evaluator evaluator) {
+        this.evaluator = evaluator;
+    }
+
+    /**
+     * @return true if the searcher has been stopped, by stop() or by passing its deadline, so that the result of the
+     * search in progress is meaningless
+     */
+    boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Turns the killer, history and capture move ordering on or off (the table move is always tried first), eg. to
+     * compare node counts with and without it
+     * @param moveOrdering true to order moves
+     */
+    void setMoveOrdering(boolean moveOrdering) {
+        this.moveOrdering = moveOrdering;
+    }
+
+    /**
+     * @param tablebase the endgame tablebase to look positions up in, or null to search them all
+     */
+    void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    /**
+     * Turns the quiescence search past the depth limit on or off, eg. to compare play with and without it
+     * @param quiescence true to resolve captures before evaluating
+     */
+    void setQuiescence(boolean quiescence) {
+        this.quiescence = quiescence;
+    }
+
+    /**
+     * @return the number of nodes searched since the count was last reset, not counting quiescence nodes
+     */
+    long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return the number of nodes searched by the quiescence search since the count was last reset
+     */
+    long getQuiescenceNodes() {
+        return quiescenceNodes;
+    }
+
+    /**
+     * @return the number of positions found in the tablebase since the count was last reset
+     */
+    long getTablebaseHits() {
+        return tablebaseHits;
+    }
+
+    /**
+     * @return the number of nodes whose search was cut off by a move scoring at least beta, since the counts were
+     * last reset
+     */
+    long getBetaCutoffs() {
+        return betaCutoffs;
+    }
+
+    /**
+     * @return the number of those beta cutoffs made by the first move searched
+     */
+    long getFirstMoveCutoffs() {
+        return firstMoveCutoffs;
+    }
+
+    /**
+     * @return the most plies from the root any search has reached since the counts were last reset
+     */
+    int getSelectiveDepth() {
+        return selectiveDepth;
+    }
+
+    void resetNodes() {
+        nodes = 0;
+        quiescenceNodes = 0;
+        tablebaseHits = 0;
+        betaCutoffs = 0;
+        firstMoveCutoffs = 0;
+        selectiveDepth = 0;
+    }
+
+    /**
+     * Asks the searcher to abandon its search as soon as possible. Safe to call from any thread.
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    /**
+     * The negamax form of minimax, with alpha-beta pruning, principal variation search and transposition table lookups.
+     * Scores are always from the point of view of the colour to move, so the same code searches for both colours.
+     *
+     * Principal variation search assumes the first (best ordered) move is best, and only checks that each later move
+     * is worse with a cheap null window search, re-searching it with the full window if it turns out not to be.
+     * @param board the game state
+     * @param depth the max depth to generate the tree
+     * @param alpha the score the colour to move is already guaranteed
+     * @param beta the score the opponent is already guaranteed, ie. the most the colour to move can get
+     * @param color the colour to move
+     * @param ply the number of moves made since the root
+     * @return the best score possible for the colour to move (given that the opponent plays with the same technique!)
+     */
+    private int negamax(Board board, int depth, int alpha, int beta, char color, int ply) {
+        if (stopped) { // abandoned, so the result doesn't matter
+            return 0;
+        }
+        if (tablebase != null) {
+            int value = tablebase.probe(board, color);
+            if (value != Tablebase.NOT_FOUND) { // the exact result is already known
+                tablebaseHits++;
+                return tablebaseScore(value, ply);
+            }
+        }
+        if (depth == 0 && quiescence) { // at the depth limit, but captures still need resolving
+            return quiesce(board, alpha, beta, color, ply);
+        }
+        nodes++;
+        if (isOutOfTime()) {
+            return 0;
+        }
+        selectiveDepth = Math.max(selectiveDepth, ply);
+        if (board.getPieces(color) == 0) { // lost all pieces
+            return -WIN_SCORE + ply;
+        }
+        if (depth == 0) { // if at depth limit
+            return evaluator.evaluate(board, color);
+        }
+
+        long key = board.getHash() ^ Zobrist.sideToMove(color);
+        long entry = transpositionTable.probe(key);
+        if (isTableCutoff(entry, depth, alpha, beta, ply)) {
+            return fromTableScore(TranspositionTable.score(entry), ply);
+        }
+
+        long[] children = movesForPly(ply);
+        int childCount = moveGenerator.generateMoves(board, color, children);
+        if (childCount == 0) { // no moves left, so lost
+            return -WIN_SCORE + ply;
+        }
+        orderMoves(children, childCount, board, entry, ply);
+
+        int alphaOriginal = alpha;
+        int bestValue = AI.NEGATIVE_INFINITY;
+        int bestMove = -1;
+        char opponent = opponent(color);
+        for (int i = 0; i < childCount; i++) { // for each child of node
+            long m = children[i];
+            int eval;
+            board.makeMove(m); // (make child)
+            if (i == 0) {
+                eval = -negamax(board, depth - 1, -beta, -alpha, opponent, ply + 1);
+            } else {
+                eval = -negamax(board, depth - 1, -alpha - 1, -alpha, opponent, ply + 1); // null window
+                if (eval > alpha && eval < beta) { // wasn't worse after all, so find its real score
+                    eval = -negamax(board, depth - 1, -beta, -alpha, opponent, ply + 1);
+                }
+            }
+            board.unmakeMove(m); // (and take it back)
+            if (stopped) { // don't let a partial result into the table
+                return 0;
+            }
+            if (eval > bestValue) {
+                bestValue = eval;
+                bestMove = PackedMove.fromTo(m);
+            }
+            alpha = Math.max(alpha, eval);
+            if (alpha >= beta) { // pruning
+                betaCutoffs++;
+                if (i == 0) {
+                    firstMoveCutoffs++;
+                }
+                moveOrderer.recordCutoff(m, depth, ply);
+                break;
+            }
+        }
+        storeInTable(key, depth, bestValue, alphaOriginal, beta, bestMove, ply);
+        return bestValue;
+    }
+
+    /**
+     * Searches only captures past the depth limit, until the position is quiet enough for the evaluation to be
+     * trusted. Captures are compulsory, so unlike in chess there is no 'stand pat' option of not capturing: a position
+     * with a capture is scored by its captures alone.
+     * @param board the game state
+     * @param alpha the score the colour to move is already guaranteed
+     * @param beta the most the colour to move can get
+     * @param color the colour to move
+     * @param ply the number of moves made since the root
+     * @return the score of the position once the captures have been played out
+     */
+    private int quiesce(Board board, int alpha, int beta, char color, int ply) {
+        if (stopped) {
+            return 0;
+        }
+        quiescenceNodes++;
+        if (isOutOfTime()) {
+            return 0;
+        }
+        selectiveDepth = Math.max(selectiveDepth, ply);
+        if (board.getPieces(color) == 0) { // lost all pieces
+            return -WIN_SCORE + ply;
+        }
+        long[] captures = movesForPly(ply);
+        int captureCount = moveGenerator.generateCaptures(board, color, captures);
+        if (captureCount == 0) { // quiet position
+            return evaluator.evaluate(board, color);
+        }
+        if (moveOrdering) {
+            moveOrderer.order(captures, captureCount, board, -1, ply);
+        }
+
+        int bestValue = AI.NEGATIVE_INFINITY;
+        char opponent = opponent(color);
+        for (int i = 0; i < captureCount; i++) {
+            long m = captures[i];
+            board.makeMove(m);
+            int eval = -quiesce(board, -beta, -alpha, opponent, ply + 1);
+            board.unmakeMove(m);
+            if (stopped) {
+                return 0;
+            }
+            bestValue = Math.max(bestValue, eval);
+            alpha = Math.max(alpha, eval);
+            if (alpha >= beta) {
+                break;
+            }
+        }
+        return bestValue;
+    }
+
+    /**
+     * Converts a tablebase value to a score, counting plies from the root as for any other win or loss
+     * @param value the position's tablebase value (not NOT_FOUND)
+     * @param ply the number of moves made since the root
+     * @return the score of the position for the colour to move
+     */
+    static int tablebaseScore(int value, int ply) {
+        if (value > 0) {
+            return WIN_SCORE - ply - Tablebase.distance(value);
+        } else if (value < 0) {
+            return -WIN_SCORE + ply + Tablebase.distance(value);
+        }
+        return 0; // drawn
+    }
+
+    /**
+     * Stops the searcher if its deadline has passed or it has reached its node limit, checking only every
+     * DEADLINE_CHECK_NODES nodes
+     * @return true if the search has just run out of time
+     */
+    private boolean isOutOfTime() {
+        long searched = nodes + quiescenceNodes;
+        if ((searched & (DEADLINE_CHECK_NODES - 1)) != 0) {
+            return false;
+        }
+        if ((timeLimited && System.nanoTime() - deadline >= 0) || (nodeLimit > 0 && searched >= nodeLimit)) {
+            stopped = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether a table entry was searched deeply enough, with a tight enough bound, to be used as the score of
+     * its position without searching it again
+     * @param entry the table entry (0 if there isn't one)
+     * @param depth the depth the position is to be searched to
+     * @param alpha alpha pruning parameter
+     * @param beta beta pruning parameter
+     * @param ply the number of moves made since the root
+     * @return true if the entry's score can be returned straight away
+     */
+    private boolean isTableCutoff(long entry, int depth, int alpha, int beta, int ply) {
+        if (entry == 0 || TranspositionTable.depth(entry) < depth) {
+            return false;
+        }
+        int score = fromTableScore(TranspositionTable.score(entry), ply);
+        int bound = TranspositionTable.bound(entry);
+        if (bound == TranspositionTable.EXACT
+                || (bound == TranspositionTable.LOWER_BOUND && score >= beta)
+                || (bound == TranspositionTable.UPPER_BOUND && score <= alpha)) {
+            transpositionTable.recordCutoff();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Stores a searched position's score in the transposition table, working out whether it is exact or a bound from
+     * the window it was searched with
+     */
+    private void storeInTable(long key, int depth, int bestValue, int alphaOriginal, int beta, int bestMove, int ply) {
+        int bound;
+        if (bestValue <= alphaOriginal) {
+            bound = TranspositionTable.UPPER_BOUND;
+        } else if (bestValue >= beta) {
+            bound = TranspositionTable.LOWER_BOUND;
+        } else {
+            bound = TranspositionTable.EXACT;
+        }
+        transpositionTable.store(key, depth, bound, toTableScore(bestValue, ply), bestMove);
+    }
+
+    /**
+     * Win and loss scores count the plies to the end of the game from the root, so a position reached at different
+     * plies needs them stored relative to itself instead
+     * @param score the score relative to the root
+     * @param ply the number of moves made since the root
+     * @return the score relative to the position
+     */
+    private static int toTableScore(int score, int ply) {
+        if (score >= WIN_THRESHOLD) {
+            return score + ply;
+        } else if (score <= -WIN_THRESHOLD) {
+            return score - ply;
+        }
+        return score;
+    }
+
+    /**
+     * @param score a score read from the table, relative to its position
+     * @param ply the number of moves made since the root
+     * @return the score relative to the root
+     */
+    private static int fromTableScore(int score, int ply) {
+        if (score >= WIN_THRESHOLD) {
+            return score - ply;
+        } else if (score <= -WIN_THRESHOLD) {
+            return score + ply;
+        }
+        return score;
+    }
+
+    private static char opponent(char color) {
+        return color == 'w' ? 'r' : 'w';
+    }
+
+    /**
+     * @param ply the number of moves made since the root
+     * @return the array to generate the given ply's moves into, which later plies won't overwrite
+     */
+    private long[] movesForPly(int ply) {
+        if (ply >= moveStack.length) { // deeper than ever before, so grow the stack
+            moveStack = Arrays.copyOf(moveStack, ply * 2);
+            for (int i = 0; i < moveStack.length; i++) {
+                if (moveStack[i] == null) {
+                    moveStack[i] = new long[MoveGenerator.MAX_MOVES];
+                }
+            }
+        }
+        return moveStack[ply];
+    }
+
+    /**
+     * Sorts the given moves into the order they should be searched in: just the table move first if move ordering is
+     * off, otherwise as described in MoveOrderer
+     * @param children the packed moves to order
+     * @param childCount the number of moves in the array
+     * @param board the position the moves are made from
+     * @param entry the position's table entry (0 if there isn't one)
+     * @param ply the number of moves made since the root
+     */
+    private void orderMoves(long[] children, int childCount, Board board, long entry, int ply) {
+        int tableMove = entry == 0 ? -1 : TranspositionTable.bestMove(entry);
+        if (moveOrdering) {
+            moveOrderer.order(children, childCount, board, tableMove, ply);
+        } else if (tableMove >= 0) {
+            for (int i = 1; i < childCount; i++) {
+                if (PackedMove.fromTo(children[i]) == tableMove) {
+                    long tableChild = children[i];
+                    children[i] = children[0];
+                    children[0] = tableChild;
+                    return;
+                }
+            }
+        }
+    }
+}
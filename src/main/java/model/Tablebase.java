@@ -0,0 +1,295 @@
+package main.java.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Endgame tablebases: the exact result of every position with few enough pieces, as worked out offline by
+ * TablebaseGenerator. Each material balance has its own file, which is memory-mapped, so only the parts of it that the
+ * search actually probes are ever read from disk.
+ *
+ * Positions are stored from the point of view of the side to move, which is always treated as red (moving up the
+ * board). Positions with white to move are rotated half a turn, which turns white into red, before looking them up.
+ *
+ * Each position takes one byte: 0 for a draw, plies + 1 for a win in that many plies, or -(plies + 1) for a loss in
+ * that many plies. Distances are capped at 126 plies: positions TablebaseGenerator couldn't resolve within that many
+ * rounds (and those depending on them) are stored as UNKNOWN, which probe treats as not being in the tablebase.
+ *
+ * @author tp275
+ */
+public class Tablebase {
+
+    /** Returned by probe for positions not covered by the tablebase */
+    public static final int NOT_FOUND = Integer.MIN_VALUE;
+    static final int MAX_DISTANCE = 126;
+    static final byte UNKNOWN = Byte.MIN_VALUE; // stored for positions whose result wasn't found
+
+    static final int SIDE_TO_MOVE_MEN_SQUARES = 0xFFFFFFF0; // men on row 0 would have been crowned
+    static final int OPPONENT_MEN_SQUARES = 0x0FFFFFFF; // and the opponent's men on row 7
+    private static final String FILE_EXTENSION = ".tb";
+    private static final long[][] BINOMIAL = new long[33][33];
+
+    private final Map<Integer, ByteBuffer> tables = new HashMap<>(); // keyed by signature
+    private int maxPieces = 0;
+
+    static {
+        for (int n = 0; n <= 32; n++) {
+            BINOMIAL[n][0] = 1;
+            for (int k = 1; k <= n; k++) {
+                BINOMIAL[n][k] = BINOMIAL[n - 1][k - 1] + (k < n ? BINOMIAL[n - 1][k] : 0);
+            }
+        }
+    }
+
+    Tablebase() {
+    }
+
+    /**
+     * Maps every tablebase file in the given directory
+     * @param directory the directory TablebaseGenerator wrote its files to
+     * @return the tablebase, which is empty if the directory has no tablebase files
+     * @throws IOException if a file can't be mapped
+     */
+    public static Tablebase open(Path directory) throws IOException {
+        Tablebase tablebase = new Tablebase();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + FILE_EXTENSION)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                tablebase.load(Integer.parseInt(name.substring(0, name.length() - FILE_EXTENSION.length()), 16), file);
+            }
+        }
+        return tablebase;
+    }
+
+    /**
+     * Maps the given file as the table for the given signature
+     * @param signature the table's material signature
+     * @param file the table's file
+     * @throws IOException if the file can't be mapped, or is the wrong size
+     */
+    void load(int signature, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() != size(signature)) {
+                throw new IOException(file + " is the wrong size for its signature");
+            }
+            tables.put(signature, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        maxPieces = Math.max(maxPieces, pieceCount(signature));
+    }
+
+    /**
+     * @return the most pieces a position can have and still be in the tablebase (0 if it is empty)
+     */
+    public int getMaxPieces() {
+        return maxPieces;
+    }
+
+    /**
+     * Looks up the given position
+     * @param board the position
+     * @param colour the colour to move
+     * @return the position's value as described above, from the point of view of the colour to move, or NOT_FOUND
+     */
+    public int probe(Board board, char colour) {
+        if (board.getPieces() > maxPieces) {
+            return NOT_FOUND;
+        }
+        if (colour == 'r') {
+            return probe(board.getRed(), board.getWhite(), board.getKings());
+        }
+        return probe(Integer.reverse(board.getWhite()), Integer.reverse(board.getRed()),
+                     Integer.reverse(board.getKings()));
+    }
+
+    /**
+     * Looks up a position given with the side to move as red
+     * @param sideToMove mask of the side to move's pieces
+     * @param opponent mask of the opponent's pieces
+     * @param kings mask of kings
+     * @return the position's value, or NOT_FOUND
+     */
+    int probe(int sideToMove, int opponent, int kings) {
+        int value = lookUp(sideToMove, opponent, kings);
+        return value == UNKNOWN ? NOT_FOUND : value;
+    }
+
+    /**
+     * Looks up a position given with the side to move as red, as stored
+     * @param sideToMove mask of the side to move's pieces
+     * @param opponent mask of the opponent's pieces
+     * @param kings mask of kings
+     * @return the position's value, UNKNOWN if its table has it as unresolved, or NOT_FOUND if there is no table
+     */
+    int lookUp(int sideToMove, int opponent, int kings) {
+        if (sideToMove == 0) {
+            return -1; // lost already
+        }
+        ByteBuffer table = tables.get(signature(sideToMove, opponent, kings));
+        if (table == null) {
+            return NOT_FOUND;
+        }
+        return table.get((int) index(sideToMove, opponent, kings));
+    }
+
+    /**
+     * @param value a value returned by probe (not NOT_FOUND)
+     * @return the number of plies to the end of the game, or 0 for a draw
+     */
+    public static int distance(int value) {
+        return value == 0 ? 0 : Math.abs(value) - 1;
+    }
+
+    /**
+     * Builds the key identifying a material balance, and so a table: 4 bits for each count of the side to move's men,
+     * its kings, the opponent's men and the opponent's kings, in that order from the most significant end
+     */
+    static int signature(int sideToMoveMen, int sideToMoveKings, int opponentMen, int opponentKings) {
+        return (sideToMoveMen << 12) | (sideToMoveKings << 8) | (opponentMen << 4) | opponentKings;
+    }
+
+    static int signature(int sideToMove, int opponent, int kings) {
+        return signature(Integer.bitCount(sideToMove & ~kings), Integer.bitCount(sideToMove & kings),
+                         Integer.bitCount(opponent & ~kings), Integer.bitCount(opponent & kings));
+    }
+
+    /**
+     * @param signature a material signature
+     * @return the signature of the same material with the other side to move
+     */
+    static int swapSides(int signature) {
+        return ((signature & 0xFF) << 8) | (signature >>> 8);
+    }
+
+    static int pieceCount(int signature) {
+        return (signature >>> 12) + ((signature >>> 8) & 0xF) + ((signature >>> 4) & 0xF) + (signature & 0xF);
+    }
+
+    static String fileName(int signature) {
+        return String.format("%04x", signature) + FILE_EXTENSION;
+    }
+
+    /**
+     * @param signature a material signature
+     * @return the number of entries in the signature's table
+     */
+    static long size(int signature) {
+        int sideToMoveMen = signature >>> 12;
+        int sideToMoveKings = (signature >>> 8) & 0xF;
+        int opponentMen = (signature >>> 4) & 0xF;
+        int opponentKings = signature & 0xF;
+        int free = 32 - sideToMoveMen - opponentMen;
+        return BINOMIAL[28][sideToMoveMen] * BINOMIAL[28][opponentMen] * BINOMIAL[free][sideToMoveKings]
+                * BINOMIAL[free - sideToMoveKings][opponentKings];
+    }
+
+    /**
+     * Works out a position's place in its table. The side to move's men, the opponent's men, the side to move's kings
+     * and the opponent's kings are each numbered as a combination of the squares they could be on, and those numbers
+     * are combined. Kings can only be on squares without men, so are numbered among those, which keeps tables smaller.
+     * Men of both sides are numbered independently, so some indexes (with men of both on the same square) are unused.
+     * @param sideToMove mask of the side to move's pieces
+     * @param opponent mask of the opponent's pieces
+     * @param kings mask of kings
+     * @return the position's index in the table for its signature
+     */
+    static long index(int sideToMove, int opponent, int kings) {
+        int sideToMoveMen = sideToMove & ~kings;
+        int opponentMen = opponent & ~kings;
+        int sideToMoveKings = sideToMove & kings;
+        int free = ~(sideToMoveMen | opponentMen);
+        int freeCount = Integer.bitCount(free);
+        long index = rank(sideToMoveMen, SIDE_TO_MOVE_MEN_SQUARES);
+        index = index * BINOMIAL[28][Integer.bitCount(opponentMen)] + rank(opponentMen, OPPONENT_MEN_SQUARES);
+        index = index * BINOMIAL[freeCount][Integer.bitCount(sideToMoveKings)] + rank(sideToMoveKings, free);
+        int opponentKings = opponent & kings;
+        return index * BINOMIAL[freeCount - Integer.bitCount(sideToMoveKings)][Integer.bitCount(opponentKings)]
+                + rank(opponentKings, free & ~sideToMoveKings);
+    }
+
+    /**
+     * The reverse of index: finds the position at the given index of the given table
+     * @param signature the table's material signature
+     * @param index the index in the table
+     * @param masks array to write the side to move's, the opponent's and the kings masks into, in that order
+     * @return false if the index isn't a legal position (men of both sides on the same square)
+     */
+    static boolean position(int signature, long index, int[] masks) {
+        int sideToMoveMenCount = signature >>> 12;
+        int sideToMoveKingsCount = (signature >>> 8) & 0xF;
+        int opponentMenCount = (signature >>> 4) & 0xF;
+        int opponentKingsCount = signature & 0xF;
+        int freeCount = 32 - sideToMoveMenCount - opponentMenCount;
+
+        long opponentKingsCombinations = BINOMIAL[freeCount - sideToMoveKingsCount][opponentKingsCount];
+        long opponentKingsRank = index % opponentKingsCombinations;
+        index /= opponentKingsCombinations;
+        long sideToMoveKingsRank = index % BINOMIAL[freeCount][sideToMoveKingsCount];
+        index /= BINOMIAL[freeCount][sideToMoveKingsCount];
+        long opponentMenRank = index % BINOMIAL[28][opponentMenCount];
+        long sideToMoveMenRank = index / BINOMIAL[28][opponentMenCount];
+
+        int sideToMoveMen = unrank(sideToMoveMenRank, sideToMoveMenCount, SIDE_TO_MOVE_MEN_SQUARES);
+        int opponentMen = unrank(opponentMenRank, opponentMenCount, OPPONENT_MEN_SQUARES);
+        if ((sideToMoveMen & opponentMen) != 0) {
+            return false;
+        }
+        int free = ~(sideToMoveMen | opponentMen);
+        int sideToMoveKings = unrank(sideToMoveKingsRank, sideToMoveKingsCount, free);
+        int opponentKings = unrank(opponentKingsRank, opponentKingsCount, free & ~sideToMoveKings);
+        masks[0] = sideToMoveMen | sideToMoveKings;
+        masks[1] = opponentMen | opponentKings;
+        masks[2] = sideToMoveKings | opponentKings;
+        return true;
+    }
+
+    /**
+     * Numbers a set of squares among all the sets of the same size drawn from the available squares (the
+     * combinatorial number system)
+     * @param squares mask of the squares, all of which must be available
+     * @param available mask of the squares that could have been chosen
+     * @return the number of the set, from 0 to (available squares choose set size) - 1
+     */
+    private static long rank(int squares, int available) {
+        long rank = 0;
+        int k = 1;
+        for (int remaining = squares; remaining != 0; remaining &= remaining - 1) {
+            int square = Integer.numberOfTrailingZeros(remaining);
+            rank += BINOMIAL[Integer.bitCount(available & ((1 << square) - 1))][k++];
+        }
+        return rank;
+    }
+
+    /**
+     * The reverse of rank
+     * @param rank the number of the set
+     * @param count the size of the set
+     * @param available mask of the squares that could have been chosen
+     * @return mask of the squares in the set
+     */
+    private static int unrank(long rank, int count, int available) {
+        int squares = 0;
+        int ordinal = Integer.bitCount(available);
+        for (int k = count; k > 0; k--) {
+            do {
+                ordinal--;
+            } while (BINOMIAL[ordinal][k] > rank);
+            rank -= BINOMIAL[ordinal][k];
+            squares |= 1 << nthSquare(available, ordinal);
+        }
+        return squares;
+    }
+
+    private static int nthSquare(int squares, int n) {
+        for (int i = 0; i < n; i++) {
+            squares &= squares - 1;
+        }
+        return Integer.numberOfTrailingZeros(squares);
+    }
+}
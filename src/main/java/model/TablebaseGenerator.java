@@ -0,0 +1,264 @@
+package main.java.model;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the endgame tablebase files read by Tablebase, for every material balance of up to a given number of pieces.
+ * Run offline, eg. "TablebaseGenerator tablebases 5" to write all tables of up to 5 pieces to the tablebases directory.
+ * Tables already in the directory are loaded rather than generated again, so a larger set can be built on a smaller.
+ *
+ * Tables are solved by retrograde analysis, smallest first, as every move either keeps the material the same (with the
+ * other side to move), crowns a man or captures, and so leads to a table of the same material or one already solved.
+ * A material balance and its mirror (the same pieces with the other side to move) are solved together in rounds:
+ * round n finds the positions won in n plies (those with a move to a position lost in n - 1) and the positions lost
+ * in n plies (those whose every move leads to a position won in at most n - 1, one of them exactly n - 1). Whatever
+ * is left unresolved once the rounds stop finding anything is a draw. If they are still finding positions after
+ * Tablebase.MAX_DISTANCE rounds, the positions left might be longer wins or losses rather than draws, so they are
+ * stored as Tablebase.UNKNOWN instead, as is any unresolved position with a move to an unknown one.
+ *
+ * @author tp275
+ */
+public final class TablebaseGenerator {
+
+    private static final int DEFAULT_MAX_PIECES = 4;
+
+    private final Path directory;
+    private final Tablebase tablebase = new Tablebase();
+    private final MoveGenerator moveGenerator = new MoveGenerator();
+    private final long[] moves = new long[MoveGenerator.MAX_MOVES];
+    private final int[] masks = new int[3];
+
+    // The pair of tables being solved, which may be the same table if its material is symmetrical
+    private int signature;
+    private int mirrorSignature;
+    private byte[] table;
+    private byte[] mirrorTable;
+    private int maxSolvedDistance; // the longest distance met in already solved tables
+
+    private TablebaseGenerator(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param args the directory to write to (default "tablebases"), and the most pieces to generate tables for
+     *             (default 4)
+     * @throws IOException if a table can't be written or read
+     */
+    public static void main(String[] args) throws IOException {
+        Path directory = Paths.get(args.length > 0 ? args[0] : "tablebases");
+        int maxPieces = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MAX_PIECES;
+        new TablebaseGenerator(directory).generate(maxPieces);
+    }
+
+    /**
+     * Generates (or loads) every table of up to the given number of pieces
+     * @param maxPieces the most pieces on the board
+     * @throws IOException if a table can't be written or read
+     */
+    private void generate(int maxPieces) throws IOException {
+        Files.createDirectories(directory);
+        for (int pieces = 2; pieces <= maxPieces; pieces++) {
+            for (int men = 0; men <= pieces; men++) { // fewer men first, as crowning a man leads to one fewer
+                for (int solving : signatures(pieces, men)) {
+                    Path file = directory.resolve(Tablebase.fileName(solving));
+                    if (Files.exists(file)) {
+                        tablebase.load(solving, file);
+                    } else if (Tablebase.swapSides(solving) >= solving) { // solved along with its mirror otherwise
+                        solve(solving);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param pieces the number of pieces
+     * @param men the number of those pieces which are men
+     * @return every signature with the given numbers of pieces and men where both sides have at least one piece
+     */
+    private static List<Integer> signatures(int pieces, int men) {
+        List<Integer> signatures = new ArrayList<>();
+        for (int sideToMoveMen = 0; sideToMoveMen <= men; sideToMoveMen++) {
+            int opponentMen = men - sideToMoveMen;
+            for (int sideToMoveKings = 0; sideToMoveKings <= pieces - men; sideToMoveKings++) {
+                int opponentKings = pieces - men - sideToMoveKings;
+                if (sideToMoveMen + sideToMoveKings > 0 && opponentMen + opponentKings > 0) {
+                    signatures.add(Tablebase.signature(sideToMoveMen, sideToMoveKings, opponentMen, opponentKings));
+                }
+            }
+        }
+        return signatures;
+    }
+
+    /**
+     * Solves the given table and its mirror, then writes them out and maps them for solving later tables with
+     * @param solving the signature to solve
+     * @throws IOException if a table can't be written
+     */
+    private void solve(int solving) throws IOException {
+        long start = System.currentTimeMillis();
+        signature = solving;
+        mirrorSignature = Tablebase.swapSides(solving);
+        long size = Tablebase.size(signature);
+        long mirrorSize = Tablebase.size(mirrorSignature);
+        if (size > Integer.MAX_VALUE || mirrorSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Table " + Tablebase.fileName(signature) + " is too big to map");
+        }
+        table = new byte[(int) size];
+        mirrorTable = mirrorSignature == signature ? table : new byte[(int) mirrorSize];
+        maxSolvedDistance = 0;
+
+        // round 0: positions with no moves are lost already
+        boolean changed = solveRound(signature, table, 0);
+        if (mirrorTable != table) {
+            changed |= solveRound(mirrorSignature, mirrorTable, 0);
+        }
+        int round = 1;
+        for (; round <= Tablebase.MAX_DISTANCE && (changed || round <= maxSolvedDistance + 1); round++) {
+            changed = solveRound(signature, table, round);
+            if (mirrorTable != table) {
+                changed |= solveRound(mirrorSignature, mirrorTable, round);
+            }
+        }
+        boolean finished = !changed && round > maxSolvedDistance + 1;
+        if (!finished) { // stopped by the round limit
+            markUnresolvedUnknown(signature, table);
+            markUnresolvedUnknown(mirrorSignature, mirrorTable);
+        }
+        do {
+            changed = markDependentsUnknown(signature, table);
+            if (mirrorTable != table) {
+                changed |= markDependentsUnknown(mirrorSignature, mirrorTable);
+            }
+        } while (changed);
+
+        write(signature, table);
+        if (mirrorTable != table) {
+            write(mirrorSignature, mirrorTable);
+        }
+        System.out.printf("Solved %s%s in %d ms%s%n", Tablebase.fileName(signature),
+                          mirrorTable != table ? " and " + Tablebase.fileName(mirrorSignature) : "",
+                          System.currentTimeMillis() - start,
+                          finished ? "" : " (round limit reached, unresolved positions stored as unknown)");
+    }
+
+    /**
+     * Resolves every position of the given table which is won or lost in exactly the given number of plies
+     * @param solving the table's signature
+     * @param values the table's values so far
+     * @param round the number of plies
+     * @return true if any position was resolved
+     */
+    private boolean solveRound(int solving, byte[] values, int round) {
+        boolean changed = false;
+        for (int index = 0; index < values.length; index++) {
+            if (values[index] != 0 || !Tablebase.position(solving, index, masks)) {
+                continue; // already resolved, or not a position
+            }
+            Board board = new Board(masks[1], masks[0], masks[2]); // the side to move is red
+            int count = moveGenerator.generateMoves(board, 'r', moves);
+            if (round == 0) {
+                if (count == 0) {
+                    values[index] = -1;
+                    changed = true;
+                }
+                continue;
+            }
+            boolean allWon = true;
+            int longestWin = 0;
+            for (int i = 0; i < count && values[index] == 0; i++) {
+                board.makeMove(moves[i]);
+                int value = valueAfterMove(board);
+                board.unmakeMove(moves[i]);
+                if (value == -round) { // the opponent is lost in round - 1 plies
+                    values[index] = (byte) (round + 1);
+                    changed = true;
+                } else if (value <= 0) {
+                    allWon = false;
+                } else {
+                    longestWin = Math.max(longestWin, value);
+                }
+            }
+            if (values[index] == 0 && allWon && longestWin == round) { // every move loses, the slowest in round - 1
+                values[index] = (byte) -(round + 1);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private void markUnresolvedUnknown(int solving, byte[] values) {
+        for (int index = 0; index < values.length; index++) {
+            if (values[index] == 0 && Tablebase.position(solving, index, masks)) {
+                values[index] = Tablebase.UNKNOWN;
+            }
+        }
+    }
+
+    /**
+     * Marks as unknown every unresolved position of the given table with a move to an unknown position, as its result
+     * depends on that position's
+     * @param solving the table's signature
+     * @param values the table's values so far
+     * @return true if any position was marked
+     */
+    private boolean markDependentsUnknown(int solving, byte[] values) {
+        boolean changed = false;
+        for (int index = 0; index < values.length; index++) {
+            if (values[index] != 0 || !Tablebase.position(solving, index, masks)) {
+                continue;
+            }
+            Board board = new Board(masks[1], masks[0], masks[2]);
+            int count = moveGenerator.generateMoves(board, 'r', moves);
+            for (int i = 0; i < count && values[index] == 0; i++) {
+                board.makeMove(moves[i]);
+                if (valueAfterMove(board) == Tablebase.UNKNOWN) {
+                    values[index] = Tablebase.UNKNOWN;
+                    changed = true;
+                }
+                board.unmakeMove(moves[i]);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @param board a position with white (the opponent of the side that just moved) to move
+     * @return the position's value from white's point of view, which may be Tablebase.UNKNOWN
+     */
+    private int valueAfterMove(Board board) {
+        int sideToMove = Integer.reverse(board.getWhite());
+        int opponent = Integer.reverse(board.getRed());
+        int kings = Integer.reverse(board.getKings());
+        if (sideToMove == 0) {
+            return -1;
+        }
+        int childSignature = Tablebase.signature(sideToMove, opponent, kings);
+        if (childSignature == signature) {
+            return table[(int) Tablebase.index(sideToMove, opponent, kings)];
+        } else if (childSignature == mirrorSignature) {
+            return mirrorTable[(int) Tablebase.index(sideToMove, opponent, kings)];
+        }
+        int value = tablebase.lookUp(sideToMove, opponent, kings);
+        if (value == Tablebase.NOT_FOUND) {
+            throw new IllegalStateException("Table " + Tablebase.fileName(childSignature) + " hasn't been solved");
+        } else if (value != Tablebase.UNKNOWN) {
+            maxSolvedDistance = Math.max(maxSolvedDistance, Tablebase.distance(value));
+        }
+        return value;
+    }
+
+    private void write(int solved, byte[] values) throws IOException {
+        Path file = directory.resolve(Tablebase.fileName(solved));
+        try (OutputStream out = Files.newOutputStream(file)) {
+            out.write(values);
+        }
+        tablebase.load(solved, file);
+    }
+}
@@ -0,0 +1,273 @@
+package main.java.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays two configurations of the AI against each other without the GUI, several games at once, to measure whether a
+ * change makes the AI stronger. Reports the wins, draws and losses of the first configuration, the Elo difference they
+ * imply (with a 95% confidence interval), and the log-likelihood ratio of a sequential probability ratio test (SPRT)
+ * between the first configuration being elo0 and elo1 Elo stronger.
+ *
+ * Usage: "Tournament engine1 engine2 [games] [threads] [sprt=elo0:elo1]", with the engines described as read by
+ * EngineConfig.parse. Games are played in pairs from the same randomly chosen opening, each configuration playing
+ * red (moving first) in one of them, so that neither gains from a lucky opening. With sprt given the tournament stops
+ * as soon as the test accepts either hypothesis.
+ *
+ * A game is drawn if it reaches MAX_PLIES, or if NO_PROGRESS_PLIES pass without a capture or a man moving, as two
+ * sides with only kings left can otherwise shuffle them forever.
+ *
+ * @author tp275
+ */
+public final class Tournament {
+
+    private static final int DEFAULT_GAMES = 100;
+    private static final int OPENING_PLIES = 4; // random moves made before the engines take over
+    private static final int MAX_PLIES = 400;
+    private static final int NO_PROGRESS_PLIES = 80;
+    private static final double SPRT_ALPHA = 0.05; // chance of accepting elo1 when elo0 is true
+    private static final double SPRT_BETA = 0.05; // chance of accepting elo0 when elo1 is true
+    private static final int WIN = 1;
+    private static final int DRAW = 0;
+    private static final int LOSS = -1;
+
+    private final EngineConfig first;
+    private final EngineConfig second;
+    private final int games;
+    private final boolean sprt;
+    private final double elo0;
+    private final double elo1;
+
+    // the first configuration's results so far, guarded by this
+    private int wins;
+    private int draws;
+    private int losses;
+    private volatile boolean finished; // set once the SPRT has accepted a hypothesis
+
+    private Tournament(EngineConfig first, EngineConfig second, int games, double[] sprtBounds) {
+        this.first = first;
+        this.second = second;
+        this.games = games;
+        this.sprt = sprtBounds != null;
+        this.elo0 = sprt ? sprtBounds[0] : 0;
+        this.elo1 = sprt ? sprtBounds[1] : 0;
+    }
+
+    /**
+     * @param args the two engine descriptions, then optionally the number of games (default 100, rounded up to an
+     *             even number), the number of games to play at once (default one per processor) and the SPRT bounds
+     * @throws InterruptedException if interrupted while waiting for the games
+     * @throws ExecutionException if a game fails
+     */
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        if (args.length < 2) {
+            System.err.println("Usage: Tournament engine1 engine2 [games] [threads] [sprt=elo0:elo1]");
+            System.err.println("eg. Tournament name=rows,heuristic=PIECE_AND_ROW name=complex,heuristic=COMPLEX 200");
+            return;
+        }
+        EngineConfig first = EngineConfig.parse(args[0]);
+        EngineConfig second = EngineConfig.parse(args[1]);
+        int games = DEFAULT_GAMES;
+        int threads = Runtime.getRuntime().availableProcessors();
+        double[] sprtBounds = null;
+        int position = 0;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].startsWith("sprt=")) {
+                String[] bounds = args[i].substring("sprt=".length()).split(":");
+                sprtBounds = new double[]{Double.parseDouble(bounds[0]), Double.parseDouble(bounds[1])};
+            } else if (position++ == 0) {
+                games = Integer.parseInt(args[i]);
+            } else {
+                threads = Integer.parseInt(args[i]);
+            }
+        }
+        new Tournament(first, second, games + games % 2, sprtBounds).run(threads);
+    }
+
+    /**
+     * Plays every game, the given number at a time, printing the standings after each
+     * @param threads the number of games to play at once
+     */
+    private void run(int threads) throws InterruptedException, ExecutionException {
+        System.out.printf("%s vs %s: %d games, %d at a time%n", first, second, games, threads);
+        long start = System.currentTimeMillis();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> results = new ArrayList<>();
+        for (int game = 0; game < games; game++) {
+            int pair = game / 2;
+            boolean firstIsRed = game % 2 == 0;
+            results.add(pool.submit(() -> {
+                if (!finished) {
+                    record(playGame(pair, firstIsRed));
+                }
+            }));
+        }
+        pool.shutdown();
+        try {
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        System.out.printf("Finished in %d s%n", (System.currentTimeMillis() - start) / 1000);
+        printStandings("Result");
+        if (sprt) {
+            double llr = logLikelihoodRatio(wins, draws, losses, elo0, elo1);
+            System.out.println(llr >= upperBound() ? "SPRT: H1 accepted (elo >= " + elo1 + ")"
+                               : llr <= lowerBound() ? "SPRT: H0 accepted (elo <= " + elo0 + ")"
+                               : "SPRT: inconclusive");
+        }
+    }
+
+    /**
+     * Plays one game between the two configurations, from an opening of OPENING_PLIES random moves
+     * @param pair the number of the pair of games, which chooses the opening
+     * @param firstIsRed true if the first configuration plays red
+     * @return WIN, DRAW or LOSS, for the first configuration
+     */
+    private int playGame(int pair, boolean firstIsRed) {
+        try (AI firstAI = first.createAI(); AI secondAI = second.createAI()) { // (closed to end their threads)
+            return playGame(pair, firstIsRed, firstAI, secondAI);
+        }
+    }
+
+    private int playGame(int pair, boolean firstIsRed, AI firstAI, AI secondAI) {
+        MoveGenerator moveGenerator = new MoveGenerator();
+        Board board = new Board();
+        char colour = 'r';
+
+        Random random = new Random(pair); // both games of a pair get the same opening
+        long[] openingMoves = new long[MoveGenerator.MAX_MOVES];
+        for (int ply = 0; ply < OPENING_PLIES; ply++) {
+            int count = moveGenerator.generateMoves(board, colour, openingMoves);
+            board.makeMove(openingMoves[random.nextInt(count)]);
+            colour = opponent(colour);
+        }
+
+        int pliesWithoutProgress = 0;
+        for (int ply = 0; ply < MAX_PLIES && pliesWithoutProgress < NO_PROGRESS_PLIES; ply++) {
+            boolean firstToMove = (colour == 'r') == firstIsRed;
+            ArrayList<Move> moves = moveGenerator.findValidMoves(board, colour);
+            if (moves.isEmpty()) { // no pieces or no moves left, so the side to move has lost
+                return firstToMove ? LOSS : WIN;
+            }
+            Move move = firstToMove ? first.play(firstAI, new Board(board), moves, colour)
+                                    : second.play(secondAI, new Board(board), moves, colour);
+            long packed = PackedMove.fromMove(move);
+            boolean manMoved = (board.getKings() & (1 << PackedMove.from(packed))) == 0;
+            pliesWithoutProgress = PackedMove.isCapture(packed) || manMoved ? 0 : pliesWithoutProgress + 1;
+            board.makeMove(packed);
+            colour = opponent(colour);
+        }
+        return DRAW;
+    }
+
+    /**
+     * Adds a game's result to the standings, prints them, and stops the tournament if the SPRT has finished
+     * @param result WIN, DRAW or LOSS, for the first configuration
+     */
+    private synchronized void record(int result) {
+        if (result == WIN) {
+            wins++;
+        } else if (result == DRAW) {
+            draws++;
+        } else {
+            losses++;
+        }
+        printStandings("Game " + (wins + draws + losses));
+        if (sprt) {
+            double llr = logLikelihoodRatio(wins, draws, losses, elo0, elo1);
+            finished = llr >= upperBound() || llr <= lowerBound();
+        }
+    }
+
+    private void printStandings(String label) {
+        int played = wins + draws + losses;
+        double score = (wins + draws / 2.0) / played;
+        double margin = eloMargin(wins, draws, losses);
+        System.out.printf("%s: +%d =%d -%d, score %.1f%%, Elo %+.1f +/- %.1f", label, wins, draws, losses,
+                          score * 100, eloDifference(score), margin);
+        if (sprt) {
+            System.out.printf(", LLR %.2f (%.2f, %.2f)", logLikelihoodRatio(wins, draws, losses, elo0, elo1),
+                              lowerBound(), upperBound());
+        }
+        System.out.println();
+    }
+
+    /**
+     * @param score the proportion of the points available scored, between 0 and 1
+     * @return the difference in Elo rating that gives the stronger player that score on average
+     */
+    static double eloDifference(double score) {
+        return 400 * Math.log10(score / (1 - score));
+    }
+
+    /**
+     * @param elo a difference in Elo rating
+     * @return the proportion of the points the stronger player scores on average
+     */
+    static double expectedScore(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    /**
+     * @return half the width of the 95% confidence interval of the Elo difference the given results imply (infinite if
+     * the interval includes a score of 0% or 100%)
+     */
+    static double eloMargin(int wins, int draws, int losses) {
+        int played = wins + draws + losses;
+        double score = (wins + draws / 2.0) / played;
+        if (score == 0 || score == 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double standardError = Math.sqrt(variance(wins, draws, losses) / played);
+        double high = Math.min(score + 1.96 * standardError, 1);
+        double low = Math.max(score - 1.96 * standardError, 0);
+        return (eloDifference(high) - eloDifference(low)) / 2;
+    }
+
+    /**
+     * Approximates the log-likelihood ratio of the given results between the hypotheses that the first player is
+     * elo0 or elo1 Elo stronger, treating the average score as normally distributed. The variance is estimated with a
+     * prior of one game of each result, so that matches without draws, or without wins or losses, still reach a bound.
+     * @return the ratio, or 0 before any games have been played
+     */
+    static double logLikelihoodRatio(int wins, int draws, int losses, double elo0, double elo1) {
+        int played = wins + draws + losses;
+        if (played == 0) {
+            return 0;
+        }
+        double variance = variance(wins + 1, draws + 1, losses + 1);
+        double score = (wins + draws / 2.0) / played;
+        double score0 = expectedScore(elo0);
+        double score1 = expectedScore(elo1);
+        return (score1 - score0) * (2 * score - score0 - score1) / (2 * variance / played);
+    }
+
+    /**
+     * @return the variance of a single game's score (1 for a win, 0.5 for a draw and 0 for a loss) in the given results
+     */
+    private static double variance(int wins, int draws, int losses) {
+        double played = wins + draws + losses;
+        double score = (wins + draws / 2.0) / played;
+        return (wins + draws / 4.0) / played - score * score;
+    }
+
+    private static double lowerBound() {
+        return Math.log(SPRT_BETA / (1 - SPRT_ALPHA));
+    }
+
+    private static double upperBound() {
+        return Math.log((1 - SPRT_BETA) / SPRT_ALPHA);
+    }
+
+    private static char opponent(char colour) {
+        return colour == 'w' ? 'r' : 'w';
+    }
+}
@@ -0,0 +1,192 @@
+package main.java.model;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size hash table of previously searched positions, keyed by Zobrist hash. Each entry remembers the depth a
+ * position was searched to, the score found, whether that score is exact or only a bound, and the best move found.
+ *
+ * The table is split into buckets of two entries: the first is only replaced by a search at least as deep, or once its
+ * entry is from an earlier search, the second is always replaced. Entries are packed into a long so that the table is
+ * just two long arrays.
+ *
+ * The table is kept from one move of a game to the next, so each search starts with what the last one found about the
+ * positions two plies on. Each entry records the search (generation) that stored it, so that deep entries left by
+ * earlier searches, mostly of positions that can no longer be reached, don't hold on to their slots forever.
+ *
+ * The table is shared by parallel searches without locking: each key is stored XORed with its entry, so an entry torn
+ * by two threads writing the same slot at once no longer matches its key and is simply treated as a miss.
+ *
+ * @author tp275
+ */
+public class TranspositionTable {
+
+    public static final int LOWER_BOUND = 1;
+    public static final int UPPER_BOUND = 2;
+    public static final int EXACT = 3;
+
+    public static final int DEFAULT_SIZE_MEGABYTES = 64;
+    private static final int BYTES_PER_ENTRY = 16;
+    private static final int GENERATIONS = 64; // generations are stored in 6 bits, wrapping around
+
+    private final long[] keys;
+    private final long[] entries;
+    private final int bucketMask;
+    private int generation; // the search storing entries now (set before any of its threads start)
+
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder cutoffs = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+
+    /**
+     * Creates a table using roughly the given amount of memory, rounded down to a power of two number of buckets
+     * @param sizeMegabytes the amount of memory the table may use
+     */
+    public TranspositionTable(int sizeMegabytes) {
+        long entryCount = Math.max(2L, ((long) sizeMegabytes << 20) / BYTES_PER_ENTRY);
+        int buckets = Integer.highestOneBit((int) Math.min(entryCount / 2, 1 << 29));
+        this.keys = new long[buckets * 2];
+        this.entries = new long[buckets * 2];
+        this.bucketMask = buckets - 1;
+    }
+
+    /**
+     * Looks up the given position
+     * @param key the Zobrist hash of the position, including the side to move
+     * @return the packed entry for the position (read with score, depth, bound and bestMove), or 0 if there isn't one
+     */
+    public long probe(long key) {
+        probes.increment();
+        int slot = ((int) key & bucketMask) << 1;
+        for (int i = slot; i < slot + 2; i++) {
+            long entry = entries[i];
+            if (entry != 0 && (keys[i] ^ entry) == key) {
+                hits.increment();
+                return entry;
+            }
+        }
+        return 0L;
+    }
+
+    /**
+     * Stores the result of searching a position
+     * @param key the Zobrist hash of the position, including the side to move
+     * @param depth the depth the position was searched to
+     * @param bound EXACT, LOWER_BOUND or UPPER_BOUND
+     * @param score the score found
+     * @param bestMove the best move found, as made by packMove, or -1 if there wasn't one
+     */
+    public void store(long key, int depth, int bound, int score, int bestMove) {
+        stores.increment();
+        long entry = (score & 0xFFFFFFFFL)
+                | ((long) Math.min(depth, 255) << 32)
+                | ((long) bound << 40)
+                | ((long) (bestMove + 1) << 42)
+                | ((long) generation << 53);
+        int slot = ((int) key & bucketMask) << 1;
+        long existing = entries[slot];
+        if ((keys[slot] ^ existing) != key && depth < depth(existing) && generation(existing) == generation) {
+            slot++; // keep the deeper entry from this search, and use the always-replace slot instead
+        }
+        keys[slot] = key ^ entry;
+        entries[slot] = entry;
+    }
+
+    /**
+     * Starts a new generation of entries, for a new search. Entries from earlier searches can still be probed, but
+     * give up their slots to any entry of the new search. Mustn't be called while a search is using the table.
+     */
+    public void newSearch() {
+        generation = (generation + 1) % GENERATIONS;
+    }
+
+    /**
+     * Counts a probe whose entry was good enough to end the search of its position straight away
+     */
+    void recordCutoff() {
+        cutoffs.increment();
+    }
+
+    /**
+     * Empties the table and resets its counters. Mustn't be called while a search is using the table.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        Arrays.fill(entries, 0L);
+        probes.reset();
+        hits.reset();
+        cutoffs.reset();
+        stores.reset();
+    }
+
+    /**
+     * Packs a move's origin and destination squares for storing in the table
+     * @param from the origin square (0-31)
+     * @param to the destination square (0-31)
+     * @return the packed move
+     */
+    public static int packMove(int from, int to) {
+        return (from << 5) | to;
+    }
+
+    /**
+     * @param entry a packed entry
+     * @return the generation of the search that stored the entry (see newSearch)
+     */
+    static int generation(long entry) {
+        return (int) (entry >>> 53) & (GENERATIONS - 1);
+    }
+
+    public static int score(long entry) {
+        return (int) entry;
+    }
+
+    public static int depth(long entry) {
+        return (int) (entry >>> 32) & 0xFF;
+    }
+
+    public static int bound(long entry) {
+        return (int) (entry >>> 40) & 0x3;
+    }
+
+    /**
+     * @param entry a packed entry
+     * @return the entry's best move, as made by packMove, or -1 if it doesn't have one
+     */
+    public static int bestMove(long entry) {
+        return ((int) (entry >>> 42) & 0x7FF) - 1;
+    }
+
+    /**
+     * @return the number of entries the table can hold
+     */
+    public int getCapacity() {
+        return keys.length;
+    }
+
+    public long getProbes() {
+        return probes.sum();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getCutoffs() {
+        return cutoffs.sum();
+    }
+
+    public long getStores() {
+        return stores.sum();
+    }
+
+    /**
+     * @return the fraction of probes that found their position in the table
+     */
+    public double getHitRate() {
+        long probeCount = probes.sum();
+        return probeCount == 0 ? 0.0 : (double) hits.sum() / probeCount;
+    }
+}
@@ -0,0 +1,380 @@
+package main.java.model;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+/**
+ * Tunes the evaluation's piece-square weights to predict game results ('Texel' tuning), writing a weight file which
+ * the game loads at startup (see EvaluationWeights). Run in two steps:
+ *
+ * "Tuner generate positions.txt [games] [nodes]" plays the AI against itself from random openings, searching the
+ * given number of nodes a move, and writes every quiet position of every game (one with no capture to make, so its
+ * evaluation can be trusted) labelled with the game's result: "colour:squares result", with the squares as read by
+ * Board.parse and the result 1, 0.5 or 0 for a white win, draw or red win. Position files from several runs, or from
+ * elsewhere, can simply be joined together. A PDN file of games (see PdnReader) can be tuned on instead.
+ *
+ * "Tuner tune positions.txt [weights.txt] [iterations]" loads the positions and adjusts the weights to minimise the
+ * mean squared difference between each position's result and the sigmoid of its evaluation, 1 / (1 + e^(-K * eval)).
+ * K is fitted first, to the starting weights, so that they need only change where they are actually wrong. The
+ * weights are then optimised by gradient descent (with Adam's per-weight step sizes), working out the error and its
+ * gradient on every core at once. Tuning starts from the weight file if it already exists, otherwise from
+ * pieceAndRowHeuristic scaled up by 10, leaving room to round the tuned weights to whole numbers.
+ *
+ * @author tp275
+ */
+public final class Tuner {
+
+    private static final int DEFAULT_GAMES = 1000;
+    private static final long DEFAULT_NODES = 20000;
+    private static final int DEFAULT_ITERATIONS = 1000;
+    private static final int OPENING_PLIES = 6; // random moves made before the AI takes over, so games differ
+    private static final int MAX_PLIES = 300;
+    private static final int NO_PROGRESS_PLIES = 80; // drawn after this many plies without a capture or man moving
+    private static final int WEIGHTS = 64; // a man and a king value for each square
+    private static final int CHUNK_SIZE = 1 << 14; // positions each parallel task works on
+    private static final double LEARNING_RATE = 1.0;
+    private static final double BETA1 = 0.9;
+    private static final double BETA2 = 0.999;
+    private static final double EPSILON = 1e-8;
+
+    // the labelled positions
+    private int[] white = new int[1024];
+    private int[] red = new int[1024];
+    private int[] kings = new int[1024];
+    private float[] results = new float[1024];
+    private int count;
+
+    private Tuner() {
+    }
+
+    /**
+     * @param args "generate" or "tune", followed by its arguments as described above
+     * @throws IOException if a file can't be read or written
+     * @throws InterruptedException if interrupted while generating
+     * @throws ExecutionException if a game fails while generating
+     */
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        if (args.length < 2 || !(args[0].equals("generate") || args[0].equals("tune"))) {
+            System.err.println("Usage: Tuner generate positions.txt [games] [nodes]");
+            System.err.println("       Tuner tune positions.txt|games.pdn [weights.txt] [iterations]");
+            return;
+        }
+        Path positions = Paths.get(args[1]);
+        if (args[0].equals("generate")) {
+            int games = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_GAMES;
+            long nodes = args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_NODES;
+            generate(positions, games, nodes, Runtime.getRuntime().availableProcessors());
+        } else {
+            Path weights = Paths.get(args.length > 2 ? args[2] : EvaluationWeights.DEFAULT_FILE);
+            int iterations = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_ITERATIONS;
+            Tuner tuner = new Tuner();
+            tuner.load(positions);
+            tuner.tune(weights, iterations);
+        }
+    }
+
+    /**
+     * Plays the given number of games, one per processor at a time, writing their labelled quiet positions
+     */
+    private static void generate(Path file, int games, long nodes, int threads)
+            throws IOException, InterruptedException, ExecutionException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            List<Future<?>> results = new ArrayList<>();
+            for (int game = 0; game < games; game++) {
+                int seed = game;
+                results.add(pool.submit(() -> {
+                    String lines = playGame(seed, nodes);
+                    synchronized (writer) {
+                        writer.write(lines);
+                    }
+                    return null;
+                }));
+            }
+            for (int game = 0; game < games; game++) {
+                results.get(game).get();
+                if ((game + 1) % 100 == 0) {
+                    System.out.println("Played " + (game + 1) + " games");
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Plays one game of the AI against itself
+     * @param seed chooses the random opening
+     * @param nodes the number of nodes to search each move
+     * @return the game's quiet positions, a line each, labelled with its result
+     */
+    private static String playGame(int seed, long nodes) {
+        AI ai = new AI(16);
+        ai.setForcedMoveDelay(0);
+        MoveGenerator moveGenerator = new MoveGenerator();
+        Random random = new Random(seed);
+        Board board = new Board();
+        char colour = 'r';
+        long[] moves = new long[MoveGenerator.MAX_MOVES];
+        for (int ply = 0; ply < OPENING_PLIES && moveGenerator.generateMoves(board, colour, moves) > 0; ply++) {
+            board.makeMove(moves[random.nextInt(moveGenerator.generateMoves(board, colour, moves))]);
+            colour = colour == 'w' ? 'r' : 'w';
+        }
+
+        List<String> positions = new ArrayList<>();
+        String result = "0.5";
+        int pliesWithoutProgress = 0;
+        for (int ply = 0; ply < MAX_PLIES && pliesWithoutProgress < NO_PROGRESS_PLIES; ply++) {
+            ArrayList<Move> validMoves = moveGenerator.findValidMoves(board, colour);
+            if (validMoves.isEmpty()) { // the side to move has lost
+                result = colour == 'w' ? "0" : "1";
+                break;
+            }
+            if (moveGenerator.generateCaptures(board, colour, moves) == 0) {
+                positions.add(colour + ":" + board.toSquareString());
+            }
+            long move = PackedMove.fromMove(ai.playNodeLimited(new Board(board), nodes, validMoves, colour));
+            boolean manMoved = (board.getKings() & (1 << PackedMove.from(move))) == 0;
+            pliesWithoutProgress = PackedMove.isCapture(move) || manMoved ? 0 : pliesWithoutProgress + 1;
+            board.makeMove(move);
+            colour = colour == 'w' ? 'r' : 'w';
+        }
+        StringBuilder lines = new StringBuilder();
+        for (String position : positions) {
+            lines.append(position).append(' ').append(result).append('\n');
+        }
+        return lines.toString();
+    }
+
+    /**
+     * Reads a file of labelled positions, as written by generate, or the quiet positions of the games in a PDN file
+     * (ending ".pdn") which have a result
+     */
+    private void load(Path file) throws IOException {
+        if (file.toString().endsWith(".pdn")) {
+            loadGames(file);
+        } else {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (!line.isEmpty()) {
+                        int space = line.lastIndexOf(' ');
+                        add(Board.parse(line.substring(line.indexOf(':') + 1, space)),
+                            Float.parseFloat(line.substring(space + 1)));
+                    }
+                }
+            }
+        }
+        System.out.println("Loaded " + count + " positions");
+    }
+
+    private void loadGames(Path file) throws IOException {
+        MoveGenerator moveGenerator = new MoveGenerator();
+        long[] moves = new long[MoveGenerator.MAX_MOVES];
+        try (PdnReader reader = PdnReader.open(file)) {
+            for (PdnGame game = reader.next(); game != null; game = reader.next()) {
+                if (game.getResult().equals(PdnGame.UNKNOWN)) {
+                    continue;
+                }
+                float result = game.getResult().equals(PdnGame.WHITE_WIN) ? 1
+                               : game.getResult().equals(PdnGame.DRAW) ? 0.5f : 0;
+                Board board = game.getStartingBoard();
+                for (int ply = 0; ply <= game.getMoveCount(); ply++) {
+                    if (moveGenerator.generateCaptures(board, game.getColour(ply), moves) == 0) {
+                        add(board, result);
+                    }
+                    if (ply < game.getMoveCount()) {
+                        board.makeMove(game.getMove(ply));
+                    }
+                }
+            }
+        }
+    }
+
+    private void add(Board board, float result) {
+        if (count == white.length) {
+            white = Arrays.copyOf(white, count * 2);
+            red = Arrays.copyOf(red, count * 2);
+            kings = Arrays.copyOf(kings, count * 2);
+            results = Arrays.copyOf(results, count * 2);
+        }
+        white[count] = board.getWhite();
+        red[count] = board.getRed();
+        kings[count] = board.getKings();
+        results[count] = result;
+        count++;
+    }
+
+    /**
+     * Fits the scale K, then optimises the weights for the given number of iterations and writes them out
+     */
+    private void tune(Path file, int iterations) throws IOException {
+        double[] weights = initialWeights(file);
+        double scale = fitScale(weights);
+        System.out.printf("K = %.6f, error %.6f%n", scale, error(weights, scale));
+
+        double[] momentum = new double[WEIGHTS];
+        double[] velocity = new double[WEIGHTS];
+        for (int iteration = 1; iteration <= iterations; iteration++) {
+            double[] gradient = gradient(weights, scale);
+            for (int i = 0; i < WEIGHTS; i++) {
+                momentum[i] = BETA1 * momentum[i] + (1 - BETA1) * gradient[i];
+                velocity[i] = BETA2 * velocity[i] + (1 - BETA2) * gradient[i] * gradient[i];
+                double correctedMomentum = momentum[i] / (1 - Math.pow(BETA1, iteration));
+                double correctedVelocity = velocity[i] / (1 - Math.pow(BETA2, iteration));
+                weights[i] -= LEARNING_RATE * correctedMomentum / (Math.sqrt(correctedVelocity) + EPSILON);
+            }
+            if (iteration % 100 == 0 || iteration == iterations) {
+                System.out.printf("Iteration %d: error %.6f%n", iteration, error(weights, scale));
+            }
+        }
+
+        int[] men = new int[32];
+        int[] kingWeights = new int[32];
+        for (int square = 0; square < 32; square++) {
+            men[square] = (int) Math.round(weights[square]);
+            kingWeights[square] = (int) Math.round(weights[32 + square]);
+        }
+        EvaluationWeights.write(file, men, kingWeights, "Tuned on " + count + " positions, error "
+                                                         + String.format("%.6f", error(weights, scale)));
+        System.out.println("Wrote " + file);
+    }
+
+    /**
+     * @return the weights in the given file if it exists, otherwise pieceAndRowHeuristic's, times 10
+     */
+    private static double[] initialWeights(Path file) throws IOException {
+        double[] weights = new double[WEIGHTS];
+        if (Files.exists(file)) {
+            int[][] fileWeights = EvaluationWeights.read(file);
+            for (int square = 0; square < 32; square++) {
+                weights[square] = fileWeights[0][square];
+                weights[32 + square] = fileWeights[1][square];
+            }
+        } else {
+            for (int square = 0; square < 32; square++) {
+                weights[square] = 10 * (5 + Board.toRow(square));
+                weights[32 + square] = 10 * 14;
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Finds the scale K which gives the least error with the given weights, searching powers of 10 and then refining
+     */
+    private double fitScale(double[] weights) {
+        double best = 1;
+        double bestError = Double.MAX_VALUE;
+        for (double step : new double[]{0.1, 0.01}) {
+            double centre = Math.log10(best);
+            double from = step == 0.1 ? -5 : centre - 0.1;
+            double to = step == 0.1 ? 0 : centre + 0.1;
+            for (double exponent = from; exponent <= to + 1e-9; exponent += step) {
+                double scale = Math.pow(10, exponent);
+                double error = error(weights, scale);
+                if (error < bestError) {
+                    bestError = error;
+                    best = scale;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the mean squared difference between the positions' results and their predictions
+     */
+    private double error(double[] weights, double scale) {
+        return chunks().mapToDouble(chunk -> {
+            double sum = 0;
+            for (int i = chunk * CHUNK_SIZE; i < Math.min(count, (chunk + 1) * CHUNK_SIZE); i++) {
+                double difference = results[i] - sigmoid(scale * evaluate(weights, i));
+                sum += difference * difference;
+            }
+            return sum;
+        }).sum() / count;
+    }
+
+    /**
+     * @return the derivative of the error with respect to each weight
+     */
+    private double[] gradient(double[] weights, double scale) {
+        double[] gradient = chunks().mapToObj(chunk -> {
+            double[] partial = new double[WEIGHTS];
+            for (int i = chunk * CHUNK_SIZE; i < Math.min(count, (chunk + 1) * CHUNK_SIZE); i++) {
+                double prediction = sigmoid(scale * evaluate(weights, i));
+                double factor = -2 * (results[i] - prediction) * prediction * (1 - prediction) * scale;
+                for (int pieces = white[i]; pieces != 0; pieces &= pieces - 1) { // d(eval)/d(weight) is +1 per piece
+                    partial[weightIndex(pieces, kings[i], false)] += factor;
+                }
+                for (int pieces = red[i]; pieces != 0; pieces &= pieces - 1) { // and -1 per mirrored red piece
+                    partial[weightIndex(pieces, kings[i], true)] -= factor;
+                }
+            }
+            return partial;
+        }).reduce(new double[WEIGHTS], (a, b) -> {
+            double[] sum = new double[WEIGHTS];
+            for (int i = 0; i < WEIGHTS; i++) {
+                sum[i] = a[i] + b[i];
+            }
+            return sum;
+        });
+        for (int i = 0; i < WEIGHTS; i++) {
+            gradient[i] /= count;
+        }
+        return gradient;
+    }
+
+    /**
+     * @return the given position's evaluation with the given weights, from white's point of view
+     */
+    private double evaluate(double[] weights, int position) {
+        double score = 0;
+        for (int pieces = white[position]; pieces != 0; pieces &= pieces - 1) {
+            score += weights[weightIndex(pieces, kings[position], false)];
+        }
+        for (int pieces = red[position]; pieces != 0; pieces &= pieces - 1) {
+            score -= weights[weightIndex(pieces, kings[position], true)];
+        }
+        return score;
+    }
+
+    /**
+     * @param pieces a mask whose lowest piece is the one to find the weight of
+     * @param kings the position's kings
+     * @param red true if the piece is red, whose weights are white's mirrored
+     * @return the index of the piece's weight
+     */
+    private static int weightIndex(int pieces, int kings, boolean red) {
+        int square = Integer.numberOfTrailingZeros(pieces);
+        int index = red ? 31 - square : square;
+        return (kings & (1 << square)) != 0 ? 32 + index : index;
+    }
+
+    private static double sigmoid(double x) {
+        return 1 / (1 + Math.exp(-x));
+    }
+
+    /**
+     * @return the chunks of positions, to be worked on in parallel
+     */
+    private IntStream chunks() {
+        return IntStream.range(0, (count + CHUNK_SIZE - 1) / CHUNK_SIZE).parallel();
+    }
+}
@@ -0,0 +1,73 @@
+package main.java.model;
+
+import java.util.Random;
+
+/**
+ * Random keys for Zobrist hashing of board positions. A position's hash is the XOR of the key for every piece on the
+ * board, so a move can update it by XORing out the pieces it removes and XORing in the pieces it adds.
+ *
+ * The keys come from a fixed seed so that hashes are the same from one run to the next.
+ *
+ * @author tp275
+ */
+final class Zobrist {
+
+    static final int WHITE_MAN = 0;
+    static final int WHITE_KING = 1;
+    static final int RED_MAN = 2;
+    static final int RED_KING = 3;
+
+    private static final long[][] pieceKeys = new long[4][32];
+    private static final long redToMoveKey;
+
+    static {
+        Random random = new Random(0x5EEDC4EC4E25L);
+        for (int piece = 0; piece < 4; piece++) {
+            for (int square = 0; square < 32; square++) {
+                pieceKeys[piece][square] = random.nextLong();
+            }
+        }
+        redToMoveKey = random.nextLong();
+    }
+
+    private Zobrist() {
+    }
+
+    /**
+     * @param piece one of WHITE_MAN, WHITE_KING, RED_MAN or RED_KING
+     * @param square the square number (0-31) the piece is on
+     * @return the key for the given piece on the given square
+     */
+    static long key(int piece, int square) {
+        return pieceKeys[piece][square];
+    }
+
+    /**
+     * Returns the key to XOR into a position's hash to include the side to move
+     * @param colour the colour to move
+     * @return the side to move key for red, or 0 for white
+     */
+    static long sideToMove(char colour) {
+        return colour == 'r' ? redToMoveKey : 0L;
+    }
+
+    /**
+     * Computes the hash of the given position from scratch
+     * @param white mask of white pieces
+     * @param red mask of red pieces
+     * @param kings mask of kings
+     * @return the Zobrist hash of the position
+     */
+    static long hash(int white, int red, int kings) {
+        long hash = 0L;
+        for (int pieces = white; pieces != 0; pieces &= pieces - 1) {
+            int square = Integer.numberOfTrailingZeros(pieces);
+            hash ^= pieceKeys[((kings >>> square) & 1) == 0 ? WHITE_MAN : WHITE_KING][square];
+        }
+        for (int pieces = red; pieces != 0; pieces &= pieces - 1) {
+            int square = Integer.numberOfTrailingZeros(pieces);
+            hash ^= pieceKeys[((kings >>> square) & 1) == 0 ? RED_MAN : RED_KING][square];
+        }
+        return hash;
+    }
+}